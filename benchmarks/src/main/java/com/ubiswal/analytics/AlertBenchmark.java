@@ -0,0 +1,58 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.storage.JsonObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// One symbol's bars through every alert rule. The rules spread over a few features with many thresholds each.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlertBenchmark {
+    private static final String[] FEATURES = {"volume_zscore(20)", "volume_zscore(50)", "move_pct(1)", "move_pct(12)", "gap_pct", "close"};
+
+    @Param({"100", "1000"})
+    public int bars;
+
+    @Param({"10", "1000", "10000"})
+    public int rules;
+
+    private PriceSeries series;
+    private AlertEngine engine;
+
+    @Setup
+    public void setup() throws IOException {
+        StockPrices stockObj = JsonObjects.readerFor(StockPrices.class).readValue(Payloads.stockJson("BENCH", bars, 11));
+        series = stockObj.getSeries();
+        List<String> ruleTexts = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            String feature = FEATURES[i % FEATURES.length];
+            double threshold = 1 + (i / FEATURES.length) * 0.01;
+            ruleTexts.add(String.format("r%d: %s %s %s", i, feature, i % 2 == 0 ? ">" : "<", i % 2 == 0 ? threshold : -threshold));
+        }
+        engine = new AlertEngine(ruleTexts);
+    }
+
+    @Benchmark
+    public List<Map<String, String>> evaluateRules() {
+        return engine.evaluate("BENCH", series, Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,92 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.storage.InMemoryStorage;
+import com.ubiswal.storage.JsonObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The per symbol analytics of StocksAnalyzer, measured on an already decoded series.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int bars;
+
+    private StockPrices stockObj;
+    private PriceSeries series;
+    private float[] averagePrices;
+    private StocksAnalyzer analyzer;
+    private IndicatorEngine indicatorEngine;
+
+    @Setup
+    public void setup() throws IOException {
+        stockObj = JsonObjects.readerFor(StockPrices.class).readValue(Payloads.stockJson("BENCH", bars, 7));
+        series = stockObj.getSeries();
+        averagePrices = series.averagePrices();
+        InMemoryStorage storage = new InMemoryStorage();
+        analyzer = new StocksAnalyzer(storage, new PartitionDiscovery(storage, 3600), storage, storage, null, null, null, null, null, null, 0, new AnalysisState(),
+                Collections.emptyList(), null, 1);
+        indicatorEngine = new IndicatorEngine(Arrays.asList("5m", "15m", "1h", "1d"));
+    }
+
+    @Benchmark
+    public boolean isDataFresh() {
+        return analyzer.isDataFresh("BENCH", stockObj);
+    }
+
+    @Benchmark
+    public float calcMaxPrice() {
+        return series.maxHigh();
+    }
+
+    @Benchmark
+    public ProfitKernels.Trade bestTimeForProfitSell() {
+        return ProfitKernels.bestTrade(series.averagePrices());
+    }
+
+    @Benchmark
+    public ProfitKernels.Trade bestTradeKernelOnly() {
+        return ProfitKernels.bestTrade(averagePrices);
+    }
+
+    @Benchmark
+    public ProfitKernels.Trade[] bestTradePerSession() {
+        return ProfitKernels.bestTradePerSession(averagePrices, series.getTime(), series.getSize());
+    }
+
+    @Benchmark
+    public float diffInStockPrice() {
+        return series.getClose()[series.getSize() - 1] - series.getOpen()[0];
+    }
+
+    // max, diff and profit together, the way a full (non incremental) run derives them.
+    @Benchmark
+    public StockState foldAllAnalytics() {
+        return StockState.update(null, "etag", series, true);
+    }
+
+    // Every indicator on every timeframe, in the single fused pass.
+    @Benchmark
+    public Map<String, String> indicators() {
+        return indicatorEngine.compute(series);
+    }
+}
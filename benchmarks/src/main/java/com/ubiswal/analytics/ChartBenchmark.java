@@ -0,0 +1,54 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.resilience.CircuitBreaker;
+import com.ubiswal.storage.JsonObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChartBenchmark {
+    @Param({"100", "1000"})
+    public int bars;
+
+    @Param({"1", "3"})
+    public int renderThreads;
+
+    private float[] highs;
+    private ChartRenderer renderer;
+
+    @Setup
+    public void setup() throws IOException {
+        StockPrices stockObj = JsonObjects.readerFor(StockPrices.class).readValue(Payloads.stockJson("BENCH", bars, 11));
+        highs = stockObj.getSeries().getHigh();
+        renderer = new ChartRenderer(renderThreads, new CircuitBreaker("render", 20, 0.5, 30000));
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Benchmark
+    public Map<ChartStyle, byte[]> renderAllStyles() throws IOException {
+        return renderer.render(highs);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.storage.JsonObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Correlation matrix and rankings across all symbols, from states already in memory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrossSectionBenchmark {
+    @Param({"100", "1000"})
+    public int symbols;
+
+    @Param({"78", "200"})
+    public int window;
+
+    private List<String> stockSymbols;
+    private AnalysisState analysisState;
+    private CrossSection crossSection;
+
+    @Setup
+    public void setup() throws IOException {
+        stockSymbols = new ArrayList<>(symbols);
+        analysisState = new AnalysisState();
+        Map<String, String> sectors = new HashMap<>();
+        for (int i = 0; i < symbols; i++) {
+            String symbol = String.format("SYM%d", i);
+            stockSymbols.add(symbol);
+            sectors.put(symbol, String.format("SECTOR%d", i % 11));
+            StockPrices stockObj = JsonObjects.readerFor(StockPrices.class).readValue(Payloads.stockJson(symbol, window + 100, i));
+            analysisState.putStock(symbol, StockState.update(null, "etag", stockObj.getSeries(), true));
+        }
+        crossSection = new CrossSection(window, 5, sectors);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> crossSection() {
+        return crossSection.compute(stockSymbols, analysisState);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ubiswal.analytics;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Accepts every batch and only counts what was written.
+class InMemoryDynamo extends AbstractAmazonDynamoDB {
+    final AtomicLong batches = new AtomicLong();
+    final AtomicLong items = new AtomicLong();
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        batches.incrementAndGet();
+        for (List<WriteRequest> requests : request.getRequestItems().values()) {
+            items.addAndGet(requests.size());
+        }
+        return new BatchWriteItemResult().withUnprocessedItems(Collections.emptyMap());
+    }
+}
@@ -0,0 +1,55 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.ubiswal.storage.JsonObjects;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonDecodeBenchmark {
+    private static final ObjectReader STOCK_PRICES_READER = JsonObjects.readerFor(StockPrices.class);
+    private static final ObjectReader ARTICLES_READER = JsonObjects.readerFor(ListOfArticles.class);
+
+    @Param({"100", "1000", "10000"})
+    public int bars;
+
+    @Param({"10", "100"})
+    public int articles;
+
+    private byte[] stockJson;
+    private byte[] newsJson;
+
+    @Setup
+    public void setup() {
+        stockJson = Payloads.stockJson("BENCH", bars, 42);
+        newsJson = Payloads.newsJson("BENCH", articles, 42);
+    }
+
+    @Benchmark
+    public StockPrices decodeStockPrices() throws IOException {
+        return STOCK_PRICES_READER.readValue(new ByteArrayInputStream(stockJson));
+    }
+
+    @Benchmark
+    public ListOfArticles decodeNews() throws IOException {
+        return ARTICLES_READER.readValue(new ByteArrayInputStream(newsJson));
+    }
+}
@@ -0,0 +1,92 @@
+package com.ubiswal.analytics;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Random;
+
+// Synthetic crawler output shaped like the alpha vantage intraday and newsapi responses.
+final class Payloads {
+    private static final int BARS_PER_SESSION = 78; // 09:30 to 16:00 in 5 minute bars
+    private static final String[] SOURCES = {"Reuters", "Bloomberg", "CNBC", "MarketWatch", "Yahoo Finance"};
+
+    private Payloads() {
+    }
+
+    // `bars` 5 minute bars, newest first like alpha vantage, ending at the close of the given day.
+    static byte[] stockJson(String symbol, int bars, long seed) {
+        Random random = new Random(seed);
+        float[] closes = new float[bars];
+        float price = 50 + random.nextInt(200);
+        for (int i = 0; i < bars; i++) {
+            price = Math.max(1, price * (1 + (float) random.nextGaussian() * 0.002f));
+            closes[i] = price;
+        }
+        LocalDateTime close = LocalDateTime.of(2020, 5, 29, 16, 0);
+        StringBuilder json = new StringBuilder(bars * 160 + 512);
+        json.append("{\"Meta Data\":{\"1. Information\":\"Intraday (5min) open, high, low, close prices and volume\",")
+                .append("\"2. Symbol\":\"").append(symbol).append("\",\"3. Last Refreshed\":\"2020-05-29 16:00:00\",")
+                .append("\"4. Interval\":\"5min\",\"5. Output Size\":\"Full size\",\"6. Time Zone\":\"US/Eastern\"},")
+                .append("\"Time Series (5min)\":{");
+        for (int i = 0; i < bars; i++) {
+            int session = i / BARS_PER_SESSION;
+            int bar = i % BARS_PER_SESSION;
+            LocalDateTime time = close.minusDays(session).minusMinutes(5L * bar);
+            float c = closes[bars - 1 - i];
+            float o = c * (1 + (float) random.nextGaussian() * 0.001f);
+            float h = Math.max(o, c) * (1 + random.nextFloat() * 0.001f);
+            float l = Math.min(o, c) * (1 - random.nextFloat() * 0.001f);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(PriceSeries.TIMESTAMP_FORMAT.format(time)).append("\":{")
+                    .append("\"1. open\":\"").append(price(o)).append("\",")
+                    .append("\"2. high\":\"").append(price(h)).append("\",")
+                    .append("\"3. low\":\"").append(price(l)).append("\",")
+                    .append("\"4. close\":\"").append(price(c)).append("\",")
+                    .append("\"5. volume\":\"").append(1000 + random.nextInt(100000)).append("\"}");
+        }
+        json.append("}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] newsJson(String symbol, int articles, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(articles * 700 + 64);
+        json.append("{\"status\":\"ok\",\"totalResults\":").append(articles).append(",\"articles\":[");
+        for (int i = 0; i < articles; i++) {
+            String source = SOURCES[random.nextInt(SOURCES.length)];
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"source\":{\"id\":null,\"name\":\"").append(source).append("\"},")
+                    .append("\"author\":\"Reporter ").append(random.nextInt(500)).append("\",")
+                    .append("\"title\":\"").append(symbol).append(" shares move on story ").append(i).append("\",")
+                    .append("\"description\":\"").append(words(random, 40)).append("\",")
+                    .append("\"url\":\"https://news.example.com/").append(symbol.toLowerCase(Locale.ROOT)).append('/').append(seed).append('/').append(i).append("\",")
+                    .append("\"urlToImage\":\"https://img.example.com/").append(i).append(".jpg\",")
+                    .append("\"publishedAt\":\"2020-05-29T15:").append(String.format("%02d", i % 60)).append(":00Z\",")
+                    .append("\"content\":\"").append(words(random, 80)).append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String price(float value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder(count * 7);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            int length = 2 + random.nextInt(8);
+            for (int c = 0; c < length; c++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.resilience.CircuitBreaker;
+import com.ubiswal.storage.AnalyticsAlertSink;
+import com.ubiswal.storage.DynamoBatchWriter;
+import com.ubiswal.storage.InMemoryStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * End to end processing (fetch, decode, analyze, render, upload, dynamo write) with inputs and images kept in
+ * InMemoryStorage and dynamo replaced by an in memory stub, so the numbers only contain our own CPU cost.
+ * The dynamo stub keeps the batch writer's item conversion and batching in the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PerSymbolBenchmark {
+    private static final String HOUR = "15";
+
+    @Param({"10", "100"})
+    public int symbols;
+
+    @Param({"100", "1000"})
+    public int bars;
+
+    @Param({"1", "8"})
+    public int analyzerThreads;
+
+    private List<String> stockSymbols;
+    private AnalysisState analysisState;
+    private DynamoBatchWriter dynamoWriter;
+    private ChartRenderer chartRenderer;
+    private StocksAnalyzer stocksAnalyzer;
+    private NewsAnalyzer newsAnalyzer;
+
+    @Setup
+    public void setup() {
+        InMemoryStorage storage = new InMemoryStorage();
+        String date = PartitionDiscovery.currentDate();
+        stockSymbols = new ArrayList<>(symbols);
+        for (int i = 0; i < symbols; i++) {
+            String symbol = String.format("SYM%d", i);
+            stockSymbols.add(symbol);
+            storage.putInput(String.format("%s/%s/%s/stock.json", date, HOUR, symbol), Payloads.stockJson(symbol, bars, i));
+            storage.putInput(String.format("%s/%s/%s/news.json", date, HOUR, symbol), Payloads.newsJson(symbol, 20, i));
+        }
+        PartitionDiscovery partitions = new PartitionDiscovery(storage, 3600);
+        analysisState = new AnalysisState();
+        dynamoWriter = new DynamoBatchWriter(new InMemoryDynamo(), "bench", 4, new CircuitBreaker("dynamo", 20, 0.5, 30000));
+        chartRenderer = new ChartRenderer(4, new CircuitBreaker("render", 20, 0.5, 30000));
+        stocksAnalyzer = new StocksAnalyzer(storage, partitions, dynamoWriter, storage, chartRenderer, new IndicatorEngine(Arrays.asList("5m", "15m", "1h", "1d")),
+                new AlertEngine(Arrays.asList("volume_zscore(20) > 3", "move_pct(12) > 2", "move_pct(12) < -2", "gap_pct > 1")), new AnalyticsAlertSink(dynamoWriter),
+                new CrossSection(200, 5, null), null, 0, analysisState, stockSymbols, date, analyzerThreads);
+        newsAnalyzer = new NewsAnalyzer(storage, partitions, dynamoWriter, analysisState, new NewsIndex(50000, TimeUnit.HOURS.toMillis(48)), stockSymbols, date, analyzerThreads);
+    }
+
+    // Every invocation should see changed inputs, otherwise incremental mode skips all the work.
+    @Setup(Level.Invocation)
+    public void forgetPreviousRun() {
+        analysisState.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dynamoWriter.close();
+        chartRenderer.shutdown();
+    }
+
+    @Benchmark
+    public void singleStockSymbol() {
+        stocksAnalyzer.analyzeSymbol(stockSymbols.get(0), PartitionDiscovery.currentDate(), HOUR);
+        dynamoWriter.flush();
+    }
+
+    @Benchmark
+    public void stocksRun() {
+        stocksAnalyzer.runAnalyzer();
+        dynamoWriter.flush();
+    }
+
+    @Benchmark
+    public void newsRun() {
+        newsAnalyzer.runAnalyzer();
+        dynamoWriter.flush();
+    }
+}
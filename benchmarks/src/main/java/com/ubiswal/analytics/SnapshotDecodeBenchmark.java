@@ -0,0 +1,76 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.ubiswal.storage.InMemoryStorage;
+import com.ubiswal.storage.JsonObjects;
+import com.ubiswal.storage.SnapshotStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Loading the same payloads as JsonDecodeBenchmark from their snapshots. Sizes are printed by setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotDecodeBenchmark {
+    private static final ObjectReader STOCK_PRICES_READER = JsonObjects.readerFor(StockPrices.class);
+    private static final ObjectReader ARTICLES_READER = JsonObjects.readerFor(ListOfArticles.class);
+    private static final String STOCK_KEY = "bench/0/BENCH/stock.json";
+    private static final String NEWS_KEY = "bench/0/BENCH/news.json";
+
+    @Param({"100", "1000", "10000"})
+    public int bars;
+
+    @Param({"10", "100"})
+    public int articles;
+
+    @Param({"true", "false"})
+    public boolean compressed;
+
+    private SnapshotStore snapshots;
+    private JsonObjects.Versioned<byte[]> stockSnapshot;
+    private JsonObjects.Versioned<byte[]> newsSnapshot;
+
+    // Parses the json once through the store, which writes the snapshots, then loads them back.
+    @Setup
+    public void setup() throws IOException {
+        Path directory = Files.createTempDirectory("snapshots");
+        snapshots = new SnapshotStore(directory, compressed);
+        InMemoryStorage storage = new InMemoryStorage();
+        storage.putInput(STOCK_KEY, Payloads.stockJson("BENCH", bars, 42));
+        storage.putInput(NEWS_KEY, Payloads.newsJson("BENCH", articles, 42));
+        snapshots.parse(STOCK_KEY, snapshots.fetchIfChanged(storage, STOCK_KEY, null), STOCK_PRICES_READER, PayloadCodecs.STOCK_PRICES);
+        snapshots.parse(NEWS_KEY, snapshots.fetchIfChanged(storage, NEWS_KEY, null), ARTICLES_READER, PayloadCodecs.ARTICLES);
+        stockSnapshot = snapshots.fetchIfChanged(storage, STOCK_KEY, null);
+        newsSnapshot = snapshots.fetchIfChanged(storage, NEWS_KEY, null);
+        System.out.printf("%nstock.json %d bytes, snapshot %d bytes; news.json %d bytes, snapshot %d bytes%n",
+                Payloads.stockJson("BENCH", bars, 42).length, stockSnapshot.getValue().length,
+                Payloads.newsJson("BENCH", articles, 42).length, newsSnapshot.getValue().length);
+    }
+
+    @Benchmark
+    public StockPrices decodeStockPrices() throws IOException {
+        return snapshots.parse(STOCK_KEY, stockSnapshot, STOCK_PRICES_READER, PayloadCodecs.STOCK_PRICES).getValue();
+    }
+
+    @Benchmark
+    public ListOfArticles decodeNews() throws IOException {
+        return snapshots.parse(NEWS_KEY, newsSnapshot, ARTICLES_READER, PayloadCodecs.ARTICLES).getValue();
+    }
+}
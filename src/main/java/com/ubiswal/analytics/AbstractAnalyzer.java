@@ -1,50 +1,225 @@
 package com.ubiswal.analytics;
 
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.ListObjectsV2Request;
-import com.amazonaws.services.s3.model.ListObjectsV2Result;
-import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.resilience.Deadline;
+import com.ubiswal.storage.AnalyticsSink;
+import com.ubiswal.storage.InputSource;
+import com.ubiswal.storage.JsonObjects;
+import com.ubiswal.storage.SnapshotStore;
+import lombok.Setter;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
 
 abstract public class AbstractAnalyzer {
-    protected final String bucketName;
-    protected final AmazonS3 s3Client;
-    protected final String analysisDate;
-    protected final String analysisHour;
+    protected final InputSource inputSource;
+    protected final PartitionDiscovery partitions;
+    protected final SymbolUnits analyticsSink; // holds each symbol's results back until the symbol is done
+    private final String configuredDate;
+    protected final int poolSize;
+    @Setter
+    private volatile Pipeline pipeline; // null to analyze each symbol start to end on one pool thread
+    @Setter
+    private volatile SnapshotStore snapshots; // null to always parse the json
+    @Setter
+    private volatile long symbolDeadlineMillis; // 0 for no deadline
+    private Logger log = Logger.get(AbstractAnalyzer.class);
 
-    public AbstractAnalyzer(AmazonS3 s3Client, String bucketName) {
-        this.s3Client = s3Client;
-        this.bucketName = bucketName;
-        this.analysisDate = todaysDate();
-        this.analysisHour = Integer.toString(findLatestHourInBucket());
+    // analysisDate may be null to analyze the current date. Nothing is read until the first run.
+    public AbstractAnalyzer(InputSource inputSource, PartitionDiscovery partitions, AnalyticsSink analyticsSink, String analysisDate, int poolSize) {
+        this.inputSource = inputSource;
+        this.partitions = partitions;
+        this.analyticsSink = new SymbolUnits(analyticsSink, getClass().getSimpleName());
+        this.poolSize = Math.max(1, poolSize);
+        this.configuredDate = analysisDate;
+    }
+
+    // Resolved on every run, since analyzers are kept across runs and days.
+    protected String analysisDate() {
+        return configuredDate == null ? todaysDate() : configuredDate;
     }
 
     protected String todaysDate() {
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-        Date date = new Date();
-        String currentDate = formatter.format(date);
-        return currentDate;
-    }
-
-    protected int findLatestHourInBucket() {
-        int maxHour = -1;
-        String currentDate = todaysDate();
-        ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(currentDate);
-        ListObjectsV2Result result = s3Client.listObjectsV2(req);
-        for (S3ObjectSummary objectSummary : result.getObjectSummaries()) {
-            String[] folderName = objectSummary.getKey().split("/");
-            int hour = new Integer(folderName[1]);
-            if (hour > maxHour) {
-                maxHour = hour;
+        return PartitionDiscovery.currentDate();
+    }
+
+    protected int findLatestHourInBucket(String date) {
+        return partitions.latestHour(date);
+    }
+
+    // Reads an input conditionally on the ETag, through the snapshots if they are on. Returns null if unchanged.
+    protected <T> JsonObjects.Versioned<T> readInput(String key, String eTag, ObjectReader reader, SnapshotStore.Codec<T> codec) throws IOException {
+        SnapshotStore snapshots = this.snapshots;
+        if (snapshots == null) {
+            return JsonObjects.readIfChanged(inputSource, key, eTag, reader);
+        }
+        JsonObjects.Versioned<byte[]> body = snapshots.fetchIfChanged(inputSource, key, eTag);
+        return body == null ? null : snapshots.parse(key, body, reader, codec);
+    }
+
+    // The FETCH half of readInput, for the pipeline.
+    protected JsonObjects.Versioned<byte[]> fetchInput(String key, String eTag) throws IOException {
+        SnapshotStore snapshots = this.snapshots;
+        return snapshots == null ? JsonObjects.fetchIfChanged(inputSource, key, eTag) : snapshots.fetchIfChanged(inputSource, key, eTag);
+    }
+
+    // The DECODE half of readInput, for the pipeline.
+    protected <T> JsonObjects.Versioned<T> parseInput(String key, JsonObjects.Versioned<byte[]> body, ObjectReader reader, SnapshotStore.Codec<T> codec) throws IOException {
+        SnapshotStore snapshots = this.snapshots;
+        return snapshots == null ? JsonObjects.parse(body, reader) : snapshots.parse(key, body, reader, codec);
+    }
+
+    /*
+     * Runs analyzeSymbol for every symbol on a bounded pool, or pipelineSymbol for every symbol if a pipeline is set.
+     * A failing symbol is logged and does not stop the others. Each symbol's results are committed as a unit once it
+     * is done, or dropped if it failed or missed its deadline.
+     */
+    protected void analyzeAll(List<String> symbols, String currentDate, String hour) {
+        analyticsSink.retain(symbols);
+        if (symbols.isEmpty()) {
+            return;
+        }
+        Pipeline pipeline = this.pipeline;
+        if (pipeline != null) {
+            analyzePipelined(pipeline, symbols, currentDate, hour);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(poolSize, symbols.size()));
+        Metrics.gauge("analytics_queue_depth", ((ThreadPoolExecutor) pool).getQueue()::size, "queue", getClass().getSimpleName());
+        try {
+            List<Future<?>> futures = new ArrayList<>(symbols.size());
+            for (String symbol : symbols) {
+                futures.add(pool.submit(() -> runSymbol(symbol, currentDate, hour, true)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    recordFailure(symbols.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warning(String.format("Interrupted while analyzing %s -- %s hours", currentDate, hour));
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void analyzePipelined(Pipeline pipeline, List<String> symbols, String currentDate, String hour) {
+        Pipeline.Run run = pipeline.newRun();
+        List<CompletableFuture<?>> futures = new ArrayList<>(symbols.size());
+        try {
+            // blocks while the first stage is full
+            for (String symbol : symbols) {
+                futures.add(startSymbol(run, symbol, currentDate, hour));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    while (cause instanceof CompletionException && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    recordFailure(symbols.get(i), cause);
+                }
             }
+        } catch (InterruptedException e) {
+            log.warning(String.format("Interrupted while analyzing %s -- %s hours", currentDate, hour));
+            run.cancel();
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            // interrupted while waiting for the first stage, or the pipeline was shut down
+            log.warning(String.format("Stopped analyzing %s -- %s hours: %s", currentDate, hour, e.getMessage()));
+            run.cancel();
+        }
+    }
+
+    /*
+     * Analyzes one symbol as a unit, on the calling thread. If the deadline passes first the thread is interrupted,
+     * which ends waits on S3, retries and rendering, and the symbol's results are dropped. Returns false if the
+     * symbol failed or timed out. Without `publish` only the analysis state and the history are updated, the items
+     * and charts are left as they are.
+     */
+    final boolean runSymbol(String symbol, String currentDate, String hour, boolean publish) {
+        analyticsSink.begin(symbol, publish);
+        Thread thread = Thread.currentThread();
+        Deadline deadline = Deadline.start(symbolDeadlineMillis, thread::interrupt);
+        boolean done = false;
+        try {
+            done = analyzeSymbol(symbol, currentDate, hour);
+        } finally {
+            if (!deadline.cancel()) {
+                Thread.interrupted(); // the interrupt was the deadline's, not meant for the pool
+                recordTimeout(symbol);
+                done = false;
+            }
+            if (done) {
+                analyticsSink.commit(symbol);
+            } else {
+                analyticsSink.abort(symbol);
+            }
+        }
+        return done;
+    }
+
+    // pipelineSymbol as a unit. At the deadline the future fails with a TimeoutException, steps already on a stage finish, later ones are skipped.
+    private CompletableFuture<?> startSymbol(Pipeline.Run run, String symbol, String currentDate, String hour) {
+        analyticsSink.begin(symbol, true);
+        CompletableFuture<?> future;
+        try {
+            future = pipelineSymbol(run, symbol, currentDate, hour);
+        } catch (RuntimeException e) {
+            analyticsSink.abort(symbol);
+            throw e;
         }
-        return maxHour;
+        Deadline deadline = Deadline.start(symbolDeadlineMillis, () -> {
+            recordTimeout(symbol);
+            future.completeExceptionally(new TimeoutException(String.format("Symbol %s missed its deadline of %d ms", symbol, symbolDeadlineMillis)));
+        });
+        return future.whenComplete((result, failure) -> {
+            deadline.cancel();
+            if (failure == null) {
+                analyticsSink.commit(symbol);
+            } else {
+                analyticsSink.abort(symbol);
+            }
+        });
+    }
+
+    private void recordTimeout(String symbol) {
+        log.warning(String.format("Symbol %s missed its deadline of %d ms, dropping its results", symbol, symbolDeadlineMillis));
+        Metrics.counter("analytics_symbol_timeouts_total", "analyzer", getClass().getSimpleName()).inc();
     }
 
+    // Logs a symbol that could not be analyzed and counts it in analytics_symbol_failures_total, and by symbol in the
+    // failedSymbols of the run summary.
+    protected void recordFailure(String symbol, Throwable cause) {
+        log.error(cause, String.format("Analysis failed for symbol %s", symbol));
+        Metrics.counter("analytics_symbol_failures_total", "analyzer", getClass().getSimpleName()).inc();
+        Metrics.countSymbol("failedSymbols", symbol);
+    }
+
+    // Returns false if the symbol failed and was recorded as a failure, true if it was analyzed or skipped.
+    protected abstract boolean analyzeSymbol(String symbol, String currentDate, String hour);
+
+    // Chains the steps of analyzeSymbol over the stages of the run. The future completes once the symbol is done.
+    protected abstract CompletableFuture<?> pipelineSymbol(Pipeline.Run run, String symbol, String currentDate, String hour);
+
     public abstract void runAnalyzer();
 
 }
@@ -0,0 +1,361 @@
+package com.ubiswal.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Evaluates the configured alert rules over a symbol's 5 minute bars in a single pass. Rules are compiled once:
+ * rules reading the same feature (metric and period) share one O(1) per bar feature, and their thresholds are kept
+ * sorted, so each bar computes every distinct feature once and finds the rules it triggers with two binary searches,
+ * however many rules there are.
+ *
+ * A rule reads "[name:] metric[(period)] > threshold [on SYMBOL,SYMBOL]", or < for a move down. It fires on the bar
+ * where the feature crosses its threshold in that direction. The metrics are
+ *   close          the close price
+ *   volume         the volume of the bar
+ *   volume_zscore  z-score of the bar's volume against the previous `period` bars, 20 by default
+ *   move_pct       percent move of the close over the last `period` bars, 1 by default
+ *   gap_pct        percent gap between the first open of a day and the last close of the day before
+ */
+public class AlertEngine {
+    private static final Pattern RULE = Pattern.compile(
+            "\\s*(?:(\\w+)\\s*:\\s*)?(\\w+)(?:\\(\\s*(\\d+)\\s*\\))?\\s*([<>])\\s*(-?\\d+(?:\\.\\d+)?)(?:\\s+on\\s+([\\w.]+(?:\\s*,\\s*[\\w.]+)*))?\\s*");
+    private static final long SECONDS_PER_DAY = 86400;
+
+    enum Metric {
+        CLOSE("close", 0),
+        VOLUME("volume", 0),
+        VOLUME_ZSCORE("volume_zscore", 20),
+        MOVE_PCT("move_pct", 1),
+        GAP_PCT("gap_pct", 0);
+
+        final String label;
+        final int defaultPeriod; // 0 for metrics without a period
+
+        Metric(String label, int defaultPeriod) {
+            this.label = label;
+            this.defaultPeriod = defaultPeriod;
+        }
+
+        static Metric fromLabel(String label) {
+            for (Metric metric : values()) {
+                if (metric.label.equals(label)) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException(String.format("Unknown alert metric %s", label));
+        }
+    }
+
+    private static final class Rule {
+        final String name;
+        final Metric metric;
+        final int period;
+        final boolean above;
+        final double threshold;
+
+        Rule(String name, Metric metric, int period, boolean above, double threshold) {
+            this.name = name;
+            this.metric = metric;
+            this.period = period;
+            this.above = above;
+            this.threshold = threshold;
+        }
+    }
+
+    // The rules reading one feature, split by direction and sorted by threshold.
+    private static final class FeatureRules {
+        final Metric metric;
+        final int period;
+        final Rule[] above;
+        final double[] aboveThresholds;
+        final Rule[] below;
+        final double[] belowThresholds;
+
+        FeatureRules(Metric metric, int period, List<Rule> rules) {
+            this.metric = metric;
+            this.period = period;
+            List<Rule> up = new ArrayList<>();
+            List<Rule> down = new ArrayList<>();
+            for (Rule rule : rules) {
+                (rule.above ? up : down).add(rule);
+            }
+            above = sorted(up);
+            aboveThresholds = thresholds(above);
+            below = sorted(down);
+            belowThresholds = thresholds(below);
+        }
+
+        private static Rule[] sorted(List<Rule> rules) {
+            Rule[] array = rules.toArray(new Rule[0]);
+            Arrays.sort(array, Comparator.comparingDouble(rule -> rule.threshold));
+            return array;
+        }
+
+        private static double[] thresholds(Rule[] rules) {
+            double[] thresholds = new double[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                thresholds[i] = rules[i].threshold;
+            }
+            return thresholds;
+        }
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final FeatureRules[] globalPlan;
+    private final Map<String, List<Rule>> scopedRules = new HashMap<>(); // symbol -> rules limited to a few symbols
+    private final ConcurrentMap<String, FeatureRules[]> scopedPlans = new ConcurrentHashMap<>();
+
+    // Rules as described above. An empty list disables the alerts.
+    public AlertEngine(List<String> rules) {
+        List<Rule> global = new ArrayList<>();
+        for (String text : rules) {
+            Matcher matcher = RULE.matcher(text);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException(String.format("Cannot parse alert rule \"%s\"", text));
+            }
+            Metric metric = Metric.fromLabel(matcher.group(2));
+            int period = matcher.group(3) == null ? metric.defaultPeriod : Integer.parseInt(matcher.group(3));
+            if (metric.defaultPeriod > 0 && period < 1) {
+                throw new IllegalArgumentException(String.format("Alert rule \"%s\" needs a period of at least 1", text));
+            }
+            boolean above = matcher.group(4).equals(">");
+            double threshold = Double.parseDouble(matcher.group(5));
+            String name = matcher.group(1) != null ? matcher.group(1)
+                    : String.format("%s%s_%s_%s", metric.label, metric.defaultPeriod > 0 ? "_" + period : "", above ? "gt" : "lt", matcher.group(5));
+            Rule rule = new Rule(name, metric, metric.defaultPeriod > 0 ? period : 0, above, threshold);
+            this.rules.add(rule);
+            if (matcher.group(6) == null) {
+                global.add(rule);
+            } else {
+                for (String symbol : matcher.group(6).split("\\s*,\\s*")) {
+                    scopedRules.computeIfAbsent(symbol, key -> new ArrayList<>()).add(rule);
+                }
+            }
+        }
+        globalPlan = compile(global);
+    }
+
+    boolean isEnabled() {
+        return !rules.isEmpty();
+    }
+
+    /*
+     * The alerts the symbol's rules raise on bars after `after` (epoch seconds), oldest first, each with its "symb",
+     * "rule", "metric", "time", "value" and "threshold". Earlier bars are still read, for the windows and crossings.
+     */
+    List<Map<String, String>> evaluate(String symbol, PriceSeries series, long after) {
+        FeatureRules[] plan = planFor(symbol);
+        if (plan.length == 0 || series.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Feature[] features = new Feature[plan.length];
+        double[] previous = new double[plan.length];
+        for (int f = 0; f < plan.length; f++) {
+            features[f] = Feature.of(plan[f].metric, plan[f].period);
+            previous[f] = Double.NaN;
+        }
+        long[] time = series.getTime();
+        float[] open = series.getOpen();
+        float[] close = series.getClose();
+        long[] volume = series.getVolume();
+        List<Map<String, String>> alerts = new ArrayList<>();
+        for (int i = 0; i < series.getSize(); i++) {
+            for (int f = 0; f < plan.length; f++) {
+                double value = features[f].next(time[i], open[i], close[i], volume[i]);
+                if (time[i] > after && !Double.isNaN(value)) {
+                    raise(symbol, series, i, plan[f], previous[f], value, alerts);
+                }
+                previous[f] = value;
+            }
+        }
+        return alerts;
+    }
+
+    private FeatureRules[] planFor(String symbol) {
+        List<Rule> scoped = scopedRules.get(symbol);
+        if (scoped == null) {
+            return globalPlan;
+        }
+        return scopedPlans.computeIfAbsent(symbol, key -> {
+            List<Rule> all = new ArrayList<>();
+            for (FeatureRules feature : globalPlan) {
+                all.addAll(Arrays.asList(feature.above));
+                all.addAll(Arrays.asList(feature.below));
+            }
+            all.addAll(scoped);
+            return compile(all);
+        });
+    }
+
+    /*
+     * Rules above a threshold t fire when previous <= t < value, rules below it when value < t <= previous. A previous
+     * value that is not known yet, e.g. on the first bar after a gap, counts as not past any threshold.
+     */
+    private static void raise(String symbol, PriceSeries series, int bar, FeatureRules feature, double previous, double value, List<Map<String, String>> alerts) {
+        boolean known = !Double.isNaN(previous);
+        int from = known ? lowerBound(feature.aboveThresholds, previous) : 0;
+        int to = lowerBound(feature.aboveThresholds, value);
+        for (int r = from; r < to; r++) {
+            alerts.add(alert(symbol, series, bar, feature.above[r], value));
+        }
+        from = upperBound(feature.belowThresholds, value);
+        to = known ? upperBound(feature.belowThresholds, previous) : feature.belowThresholds.length;
+        for (int r = from; r < to; r++) {
+            alerts.add(alert(symbol, series, bar, feature.below[r], value));
+        }
+    }
+
+    private static Map<String, String> alert(String symbol, PriceSeries series, int bar, Rule rule, double value) {
+        Map<String, String> alert = new LinkedHashMap<>();
+        alert.put("symb", symbol);
+        alert.put("rule", rule.name);
+        alert.put("metric", rule.metric.label);
+        alert.put("time", series.timestamp(bar));
+        alert.put("value", Float.toString((float) value));
+        alert.put("threshold", Double.toString(rule.threshold));
+        return alert;
+    }
+
+    // Index of the first threshold >= value.
+    private static int lowerBound(double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first threshold > value.
+    private static int upperBound(double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static FeatureRules[] compile(List<Rule> rules) {
+        Map<String, List<Rule>> byFeature = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            byFeature.computeIfAbsent(rule.metric.label + "/" + rule.period, key -> new ArrayList<>()).add(rule);
+        }
+        List<FeatureRules> plan = new ArrayList<>();
+        for (List<Rule> featureRules : byFeature.values()) {
+            Rule first = featureRules.get(0);
+            plan.add(new FeatureRules(first.metric, first.period, featureRules));
+        }
+        return plan.toArray(new FeatureRules[0]);
+    }
+
+    // O(1) per bar computation of one metric. NaN while there are not enough bars for a value.
+    private abstract static class Feature {
+        abstract double next(long time, float open, float close, long volume);
+
+        static Feature of(Metric metric, int period) {
+            switch (metric) {
+                case CLOSE:
+                    return new Feature() {
+                        @Override
+                        double next(long time, float open, float close, long volume) {
+                            return close;
+                        }
+                    };
+                case VOLUME:
+                    return new Feature() {
+                        @Override
+                        double next(long time, float open, float close, long volume) {
+                            return volume;
+                        }
+                    };
+                case VOLUME_ZSCORE:
+                    return new VolumeZScore(period);
+                case MOVE_PCT:
+                    return new MovePercent(period);
+                default:
+                    return new GapPercent();
+            }
+        }
+    }
+
+    private static final class VolumeZScore extends Feature {
+        private final RollingWindow window;
+
+        VolumeZScore(int period) {
+            this.window = new RollingWindow(period);
+        }
+
+        @Override
+        double next(long time, float open, float close, long volume) {
+            double zScore = Double.NaN;
+            if (window.isFull()) {
+                double stdDev = window.stdDev();
+                zScore = stdDev > 0 ? (volume - window.mean()) / stdDev : Double.NaN;
+            }
+            window.accept(volume);
+            return zScore;
+        }
+    }
+
+    private static final class MovePercent extends Feature {
+        private final double[] closes; // ring of the last `period` closes
+        private int next;
+        private int count;
+
+        MovePercent(int period) {
+            this.closes = new double[period];
+        }
+
+        @Override
+        double next(long time, float open, float close, long volume) {
+            double move = Double.NaN;
+            if (count == closes.length && closes[next] != 0) {
+                move = (close - closes[next]) / closes[next] * 100;
+            } else if (count < closes.length) {
+                count++;
+            }
+            closes[next] = close;
+            next = (next + 1) % closes.length;
+            return move;
+        }
+    }
+
+    private static final class GapPercent extends Feature {
+        private long day = Long.MIN_VALUE;
+        private double lastClose;
+
+        @Override
+        double next(long time, float open, float close, long volume) {
+            long barDay = Math.floorDiv(time, SECONDS_PER_DAY);
+            double gap = Double.NaN;
+            if (day != Long.MIN_VALUE && barDay != day && lastClose != 0) {
+                gap = (open - lastClose) / lastClose * 100;
+            }
+            day = barDay;
+            lastClose = close;
+            return gap;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ubiswal.analytics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Per symbol results of previous runs, kept across runs so that unchanged inputs can be skipped.
+public class AnalysisState {
+    private final ConcurrentMap<String, StockState> stocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> newsETags = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, long[]> newsSlots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<ChartStyle, Long>> charts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> alertedUntil = new ConcurrentHashMap<>();
+
+    StockState getStock(String symbol) {
+        return stocks.get(symbol);
+    }
+
+    void putStock(String symbol, StockState state) {
+        stocks.put(symbol, state);
+    }
+
+    void removeStock(String symbol) {
+        stocks.remove(symbol);
+    }
+
+    String getNewsETag(String symbol) {
+        return newsETags.get(symbol);
+    }
+
+    void putNewsETag(String symbol, String eTag) {
+        newsETags.put(symbol, eTag);
+    }
+
+    // Story id written to each news slot of the symbol, 0 for an empty slot.
+    long[] getNewsSlots(String symbol) {
+        return newsSlots.get(symbol);
+    }
+
+    void putNewsSlots(String symbol, long[] slots) {
+        newsSlots.put(symbol, slots);
+    }
+
+    // Content hash of the chart last uploaded for the symbol and style, null if none was.
+    Long getChartHash(String symbol, ChartStyle style) {
+        Map<ChartStyle, Long> hashes = charts.get(symbol);
+        return hashes == null ? null : hashes.get(style);
+    }
+
+    void putChartHash(String symbol, ChartStyle style, long hash) {
+        charts.computeIfAbsent(symbol, key -> Collections.synchronizedMap(new EnumMap<>(ChartStyle.class))).put(style, hash);
+    }
+
+    // Time of the latest bar the symbol's alerts were evaluated up to, kept when its stock state is dropped.
+    Long getAlertedUntil(String symbol) {
+        return alertedUntil.get(symbol);
+    }
+
+    void putAlertedUntil(String symbol, long time) {
+        alertedUntil.put(symbol, time);
+    }
+
+    // Forgets what was published, so the next run writes every symbol out again, e.g. to a new table. How far the
+    // alerts got is kept, so they are not raised twice.
+    public void forgetPublished() {
+        stocks.clear();
+        newsETags.clear();
+        newsSlots.clear();
+        charts.clear();
+    }
+
+    // Forgets a symbol that is no longer analyzed.
+    public void remove(String symbol) {
+        stocks.remove(symbol);
+        newsETags.remove(symbol);
+        newsSlots.remove(symbol);
+        charts.remove(symbol);
+        alertedUntil.remove(symbol);
+    }
+
+    public void clear() {
+        stocks.clear();
+        newsETags.clear();
+        newsSlots.clear();
+        charts.clear();
+        alertedUntil.clear();
+    }
+}
@@ -0,0 +1,24 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+class Article{
+    @Getter
+    @Setter
+    private Source source;
+    @Getter
+    @Setter
+    private String author;
+    @Getter
+    @Setter
+    private String description;
+    @Getter
+    @Setter
+    private String url;
+    @Getter
+    @Setter
+    private String urlToImage;
+}
@@ -0,0 +1,225 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.ubiswal.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Streams a newsapi "articles" array into Articles, validating each one as its fields go by:
+ *   - url, author and description must be non blank strings, otherwise the article is rejected. Once an article is
+ *     rejected the rest of its fields are skipped without being decoded.
+ *   - urls must be absolute http(s) urls and are normalized: lower case scheme and host, no fragment, no utm_*
+ *     parameters. A bad urlToImage is dropped rather than rejecting the article.
+ *   - long descriptions, authors and source names are cut to a bounded length, and a missing source name is
+ *     replaced by the host of the url.
+ * Fields the analyzer does not use, like the full "content", are skipped without being decoded.
+ * Rejects and repairs are counted in analytics_rejected_articles_total and analytics_repaired_articles_total.
+ */
+class ArticlesDeserializer extends StdDeserializer<List<Article>> {
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_URL = 2048;
+    private static final int MAX_DESCRIPTION = 1000;
+    private static final int MAX_NAME = 200;
+
+    ArticlesDeserializer() {
+        super(List.class);
+    }
+
+    @Override
+    public List<Article> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.getCurrentToken() != JsonToken.START_ARRAY) {
+            @SuppressWarnings("unchecked")
+            List<Article> unexpected = (List<Article>) ctxt.handleUnexpectedToken(List.class, p);
+            return unexpected;
+        }
+        List<Article> articles = new ArrayList<>();
+        JsonToken token;
+        while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                reject("malformed");
+                continue;
+            }
+            Article article = readArticle(p);
+            if (article != null) {
+                articles.add(article);
+            }
+        }
+        return articles;
+    }
+
+    // Reads one article object up to its END_OBJECT. Returns null if the article was rejected.
+    private static Article readArticle(JsonParser p) throws IOException {
+        String url = null;
+        String author = null;
+        String description = null;
+        String urlToImage = null;
+        String sourceName = null;
+        String rejected = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if (rejected != null) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "url":
+                    url = normalizeUrl(p);
+                    rejected = url == null ? "url" : null;
+                    break;
+                case "author":
+                    author = text(p, MAX_NAME);
+                    rejected = author == null ? "author" : null;
+                    break;
+                case "description":
+                    description = text(p, MAX_DESCRIPTION);
+                    rejected = description == null ? "description" : null;
+                    break;
+                case "urlToImage":
+                    urlToImage = normalizeUrl(p);
+                    break;
+                case "source":
+                    sourceName = sourceName(p);
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        if (rejected == null) {
+            rejected = url == null ? "url" : author == null ? "author" : description == null ? "description" : null;
+        }
+        if (rejected != null) {
+            reject(rejected);
+            return null;
+        }
+        if (sourceName == null) {
+            sourceName = URI.create(url).getHost();
+            repaired("source");
+        }
+        Article article = new Article();
+        article.setUrl(url);
+        article.setAuthor(author);
+        article.setDescription(description);
+        article.setUrlToImage(urlToImage);
+        Source source = new Source();
+        source.setName(sourceName);
+        article.setSource(source);
+        return article;
+    }
+
+    private static String sourceName(JsonParser p) throws IOException {
+        if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+        String name = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if (field.equals("name")) {
+                name = text(p, MAX_NAME);
+            } else {
+                p.skipChildren();
+            }
+        }
+        return name;
+    }
+
+    // The trimmed string value cut to `max` chars, or null if the value is not a string or is blank.
+    private static String text(JsonParser p, int max) throws IOException {
+        if (p.getCurrentToken() != JsonToken.VALUE_STRING) {
+            p.skipChildren();
+            return null;
+        }
+        char[] chars = p.getTextCharacters();
+        int start = p.getTextOffset();
+        int end = start + p.getTextLength();
+        while (start < end && Character.isWhitespace(chars[start])) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(chars[end - 1])) {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        if (end - start > max) {
+            end = start + max - 1;
+            if (Character.isHighSurrogate(chars[end - 1])) {
+                end--;
+            }
+            repaired("length");
+            return new String(chars, start, end - start) + '\u2026';
+        }
+        return new String(chars, start, end - start);
+    }
+
+    // The normalized http(s) url, or null if the value is not one.
+    private static String normalizeUrl(JsonParser p) throws IOException {
+        if (p.getCurrentToken() != JsonToken.VALUE_STRING || p.getTextLength() > MAX_URL) {
+            p.skipChildren();
+            return null;
+        }
+        String text = text(p, MAX_URL);
+        if (text == null) {
+            return null;
+        }
+        try {
+            URI uri = new URI(text);
+            String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+            if (!("http".equals(scheme) || "https".equals(scheme)) || uri.getHost() == null) {
+                return null;
+            }
+            StringBuilder normalized = new StringBuilder(text.length()).append(scheme).append("://");
+            if (uri.getRawUserInfo() != null) {
+                normalized.append(uri.getRawUserInfo()).append('@');
+            }
+            normalized.append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (uri.getPort() >= 0) {
+                normalized.append(':').append(uri.getPort());
+            }
+            normalized.append(uri.getRawPath() == null ? "" : uri.getRawPath());
+            String query = withoutTracking(uri.getRawQuery());
+            if (query != null) {
+                normalized.append('?').append(query);
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static String withoutTracking(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder kept = new StringBuilder();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !parameter.startsWith("utm_")) {
+                if (kept.length() > 0) {
+                    kept.append('&');
+                }
+                kept.append(parameter);
+            }
+        }
+        return kept.length() == 0 ? null : kept.toString();
+    }
+
+    private static void reject(String reason) {
+        Metrics.counter("analytics_rejected_articles_total", "reason", reason).inc();
+    }
+
+    private static void repaired(String what) {
+        Metrics.counter("analytics_repaired_articles_total", "repair", what).inc();
+    }
+}
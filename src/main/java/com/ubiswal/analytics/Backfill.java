@@ -0,0 +1,296 @@
+package com.ubiswal.analytics;
+
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.storage.InputSource;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Replays the crawler output of a range of past <date>/<hour>/ partitions through the analyzers, e.g. to compute a
+ * new metric or a fixed one over months of data.
+ *
+ * The partitions of every symbol are listed up front. Each analyzer and symbol pair is a task that goes through its
+ * partitions oldest first, since the analysis state and the history of a symbol build on the previous partition,
+ * and the tasks run in parallel on `threads` threads. A partition that still fails after `attempts` tries stops its
+ * task, since the partitions after it would build on a gap, and is retried first when the backfill is run again.
+ *
+ * Progress is checkpointed as the last finished partition of every pair, in a properties file that is replaced
+ * atomically every `checkpointSeconds`. The sinks are flushed before each save, so a checkpointed partition is
+ * always written out. Running the same backfill again resumes after the checkpointed partitions.
+ *
+ * The analytics items, charts and latest alerts only hold the latest value, the one the live runs publish from the
+ * newest partition. Replaying an older partition only updates the history and the alert file, so only the newest
+ * partition in the bucket, if it is in range, publishes those.
+ */
+public class Backfill {
+    // One crawler partition, <date>/<hour>.
+    static final class Partition implements Comparable<Partition> {
+        final LocalDate date;
+        final int hour;
+
+        Partition(LocalDate date, int hour) {
+            this.date = date;
+            this.hour = hour;
+        }
+
+        // "2020-03-01/13", or "2020-03-01" for `defaultHour` of that day.
+        static Partition parse(String partition, int defaultHour) {
+            int slash = partition.indexOf('/');
+            if (slash < 0) {
+                return new Partition(LocalDate.parse(partition), defaultHour);
+            }
+            return new Partition(LocalDate.parse(partition.substring(0, slash)), Integer.parseInt(partition.substring(slash + 1)));
+        }
+
+        @Override
+        public int compareTo(Partition other) {
+            int byDate = date.compareTo(other.date);
+            return byDate != 0 ? byDate : Integer.compare(hour, other.hour);
+        }
+
+        @Override
+        public String toString() {
+            return date + "/" + hour;
+        }
+    }
+
+    private final InputSource inputSource;
+    private final Map<String, AbstractAnalyzer> analyzers;
+    private final Flushable sinks;
+    private final Path checkpointFile;
+    private final int threads;
+    private final int attempts;
+    private final long checkpointMillis;
+    private final Map<String, Partition> finished = new ConcurrentHashMap<>(); // "<analyzer>.<symbol>" -> partition
+    private final AtomicInteger remaining = new AtomicInteger();
+    private long lastCheckpoint = System.currentTimeMillis();
+    private Logger log = Logger.get(this.getClass());
+
+    // `analyzers` by the name used in the checkpoint, `sinks` flushes everything the analyzers write to.
+    public Backfill(InputSource inputSource, Map<String, AbstractAnalyzer> analyzers, Flushable sinks, Path checkpointFile, int threads, int attempts, long checkpointSeconds) {
+        this.inputSource = inputSource;
+        this.analyzers = analyzers;
+        this.sinks = sinks;
+        this.checkpointFile = checkpointFile;
+        this.threads = Math.max(1, threads);
+        this.attempts = Math.max(1, attempts);
+        this.checkpointMillis = TimeUnit.SECONDS.toMillis(checkpointSeconds);
+        Metrics.gauge("analytics_backfill_remaining_partitions", remaining::get);
+    }
+
+    /*
+     * Analyzes the partitions from `from` to `to`, both included, of the symbols, skipping those already in the
+     * checkpoint. Returns the number of analyzer and symbol pairs that stopped at a failing partition.
+     */
+    public int run(String from, String to, List<String> symbols) throws IOException, InterruptedException {
+        Partition first = Partition.parse(from, 0);
+        Partition last = Partition.parse(to, 23);
+        loadCheckpoint();
+        Partition newest = newestPartition();
+        Map<String, List<Partition>> partitions = listPartitions(first, last, symbols);
+        List<SymbolTask> tasks = new ArrayList<>();
+        for (Map.Entry<String, AbstractAnalyzer> analyzer : analyzers.entrySet()) {
+            for (Map.Entry<String, List<Partition>> symbol : partitions.entrySet()) {
+                String key = analyzer.getKey() + "." + symbol.getKey();
+                Partition done = finished.get(key);
+                List<Partition> todo = new ArrayList<>();
+                for (Partition partition : symbol.getValue()) {
+                    if (done == null || partition.compareTo(done) > 0) {
+                        todo.add(partition);
+                    }
+                }
+                remaining.addAndGet(todo.size());
+                tasks.add(new SymbolTask(analyzer.getKey(), analyzer.getValue(), symbol.getKey(), todo, newest));
+            }
+        }
+        log.info(String.format("Backfilling %d partitions from %s to %s with %d threads, publishing from %s", remaining.get(), first, last, threads, newest));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (SymbolTask task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            for (Future<Integer> future : futures) {
+                try {
+                    failed.addAndGet(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Backfill task failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            saveCheckpoint();
+        }
+        log.info(String.format("Backfill from %s to %s done, %d symbols stopped at a failure", first, last, failed.get()));
+        return failed.get();
+    }
+
+    // The partitions in range of every symbol, oldest first. Symbols the crawler did not write in an hour are left out.
+    private Map<String, List<Partition>> listPartitions(Partition first, Partition last, List<String> symbols) throws IOException {
+        Set<String> wanted = new HashSet<>(symbols);
+        Map<String, List<Partition>> partitions = new TreeMap<>();
+        for (LocalDate date = first.date; !date.isAfter(last.date); date = date.plusDays(1)) {
+            List<Integer> hours = new ArrayList<>();
+            for (String hour : names(date + "/")) {
+                try {
+                    hours.add(Integer.parseInt(hour));
+                } catch (NumberFormatException e) {
+                    log.warning(String.format("Ignoring unexpected partition %s/%s", date, hour));
+                }
+            }
+            hours.sort(null);
+            for (int hour : hours) {
+                Partition partition = new Partition(date, hour);
+                if (partition.compareTo(first) < 0 || partition.compareTo(last) > 0) {
+                    continue;
+                }
+                for (String symbol : names(partition + "/")) {
+                    if (wanted.contains(symbol)) {
+                        partitions.computeIfAbsent(symbol, key -> new ArrayList<>()).add(partition);
+                    }
+                }
+            }
+        }
+        return partitions;
+    }
+
+    // The latest partition the crawler wrote, whose analytics the live runs publish. Null if there is none.
+    private Partition newestPartition() throws IOException {
+        LocalDate newest = null;
+        for (String date : names("")) {
+            try {
+                LocalDate parsed = LocalDate.parse(date);
+                newest = newest == null || parsed.isAfter(newest) ? parsed : newest;
+            } catch (DateTimeParseException e) {
+                // not a partition
+            }
+        }
+        if (newest == null) {
+            return null;
+        }
+        int hour = -1;
+        for (String name : names(newest + "/")) {
+            try {
+                hour = Math.max(hour, Integer.parseInt(name));
+            } catch (NumberFormatException e) {
+                // reported by listPartitions if in range
+            }
+        }
+        return hour < 0 ? null : new Partition(newest, hour);
+    }
+
+    // The names of the "directories" right under the prefix.
+    private List<String> names(String prefix) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (String child : inputSource.listCommonPrefixes(prefix, "/")) {
+            names.add(child.substring(prefix.length(), child.length() - 1));
+        }
+        return names;
+    }
+
+    // Goes through the partitions of one analyzer and symbol in order. Returns 1 if it stopped at a failure, else 0.
+    private final class SymbolTask implements Callable<Integer> {
+        private final String name;
+        private final AbstractAnalyzer analyzer;
+        private final String symbol;
+        private final List<Partition> partitions;
+        private final Partition newest; // the partitions before it are not published
+
+        SymbolTask(String name, AbstractAnalyzer analyzer, String symbol, List<Partition> partitions, Partition newest) {
+            this.name = name;
+            this.analyzer = analyzer;
+            this.symbol = symbol;
+            this.partitions = partitions;
+            this.newest = newest;
+        }
+
+        @Override
+        public Integer call() throws IOException, InterruptedException {
+            for (Partition partition : partitions) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                boolean publish = newest == null || partition.compareTo(newest) >= 0;
+                boolean done = analyzer.runSymbol(symbol, partition.date.toString(), Integer.toString(partition.hour), publish);
+                for (int attempt = 2; !done && attempt <= attempts; attempt++) {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(1L << (attempt - 2)));
+                    done = analyzer.runSymbol(symbol, partition.date.toString(), Integer.toString(partition.hour), publish);
+                }
+                Metrics.counter("analytics_backfill_partitions_total", "analyzer", name, "result", done ? "done" : "failed").inc();
+                if (!done) {
+                    log.error(String.format("Stopping the %s backfill of %s at %s after %d attempts", name, symbol, partition, attempts));
+                    return 1;
+                }
+                finished.put(name + "." + symbol, partition);
+                remaining.decrementAndGet();
+                maybeSaveCheckpoint();
+            }
+            return 0;
+        }
+    }
+
+    private void loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            finished.put(key, Partition.parse(properties.getProperty(key), 0));
+        }
+        log.info(String.format("Resuming from the checkpoint in %s", checkpointFile));
+    }
+
+    private void maybeSaveCheckpoint() throws IOException {
+        synchronized (this) {
+            if (System.currentTimeMillis() - lastCheckpoint < checkpointMillis) {
+                return;
+            }
+            lastCheckpoint = System.currentTimeMillis();
+        }
+        saveCheckpoint();
+    }
+
+    // Snapshots the progress first and flushes after, so that everything the snapshot covers has been written.
+    private synchronized void saveCheckpoint() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Partition> entry : finished.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        sinks.flush();
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "last finished partition of every analyzer and symbol");
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,103 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.metrics.Histogram;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.resilience.CircuitBreaker;
+import com.ubiswal.resilience.CircuitOpenException;
+import org.knowm.xchart.BitmapEncoder;
+import org.knowm.xchart.XYChart;
+import org.knowm.xchart.XYSeries;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/*
+ * Renders every ChartStyle of a price series in parallel on a dedicated pool, encoding straight to jpg bytes.
+ * XYChart is not thread safe, so each render thread builds one chart per style once and then only swaps its data.
+ * Renders go through the render circuit breaker: while rendering keeps failing, e.g. out of memory, it is not tried
+ * for every symbol and render() fails fast with a CircuitOpenException.
+ */
+public class ChartRenderer {
+    private static final String SERIES_NAME = "prices";
+
+    private final ExecutorService renderPool;
+    private final CircuitBreaker breaker;
+    private final ThreadLocal<Map<ChartStyle, XYChart>> templates = ThreadLocal.withInitial(() -> new EnumMap<>(ChartStyle.class));
+
+    public ChartRenderer(int renderThreads, CircuitBreaker breaker) {
+        this.renderPool = Executors.newFixedThreadPool(Math.max(1, renderThreads));
+        this.breaker = breaker;
+        Metrics.gauge("analytics_queue_depth", ((ThreadPoolExecutor) renderPool).getQueue()::size, "queue", "render");
+    }
+
+    Map<ChartStyle, byte[]> render(float[] prices) throws IOException {
+        return render(prices, EnumSet.allOf(ChartStyle.class));
+    }
+
+    Map<ChartStyle, byte[]> render(float[] prices, Set<ChartStyle> styles) throws IOException {
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(breaker.getName());
+        }
+        double[] yData = new double[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            yData[i] = prices[i];
+        }
+        Map<ChartStyle, Future<byte[]>> futures = new EnumMap<>(ChartStyle.class);
+        for (ChartStyle style : styles) {
+            futures.put(style, renderPool.submit(() -> renderOne(style, yData)));
+        }
+        Map<ChartStyle, byte[]> images = new EnumMap<>(ChartStyle.class);
+        Histogram.Timer timer = Metrics.stage("render");
+        try {
+            for (Map.Entry<ChartStyle, Future<byte[]>> entry : futures.entrySet()) {
+                images.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (ExecutionException e) {
+            breaker.onFailure();
+            throw new IOException("Failed to render chart", e.getCause());
+        } catch (InterruptedException e) {
+            // says nothing about rendering, the trial call if this was one expires on its own
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering charts", e);
+        } finally {
+            timer.close();
+        }
+        breaker.onSuccess();
+        return images;
+    }
+
+    public void shutdown() {
+        renderPool.shutdown();
+    }
+
+    private byte[] renderOne(ChartStyle style, double[] yData) throws IOException {
+        XYChart chart = templates.get().computeIfAbsent(style, ChartRenderer::newTemplate);
+        chart.updateXYSeries(SERIES_NAME, null, yData, null);
+        return BitmapEncoder.getBitmapBytes(chart, BitmapEncoder.BitmapFormat.JPG);
+    }
+
+    private static XYChart newTemplate(ChartStyle style) {
+        XYChart chart = new XYChart(style.width, style.height);
+        XYSeries series = chart.addSeries(SERIES_NAME, new double[]{0});
+        chart.getStyler().setMarkerSize(0);
+        chart.getStyler().setLegendVisible(false);
+        chart.getStyler().setPlotGridLinesVisible(false);
+        chart.getStyler().setPlotBorderVisible(false);
+        chart.getStyler().setXAxisTicksVisible(false);
+
+        chart.getStyler().setChartBackgroundColor(style.background);
+        series.setFillColor(style.fill);
+        series.setLineColor(style.line);
+        chart.getStyler().setPlotBackgroundColor(style.background);
+        chart.getStyler().setAxisTickLabelsColor(style.line);
+        return chart;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ubiswal.analytics;
+
+import java.awt.Color;
+
+// The chart variants published for every symbol, uploaded as <symbol>_<suffix>.jpg.
+enum ChartStyle {
+    DARK_SMALL("dark_small", 300, 300, new Color(0x28, 0x28, 0x28), new Color(28, 28, 28), new Color(0x2E, 0xA2, 0x31)),
+    DARK_LARGE("dark_large", 800, 300, new Color(0x28, 0x28, 0x28), new Color(28, 28, 28), new Color(0x2E, 0xA2, 0x31)),
+    LIGHT("light", 300, 300, new Color(0xFF, 0xFF, 0xFF), new Color(0xFF, 0xFF, 0xFF), new Color(0xFF, 0, 0));
+
+    final String suffix;
+    final int width;
+    final int height;
+    final Color background;
+    final Color fill;
+    final Color line;
+
+    ChartStyle(String suffix, int width, int height, Color background, Color fill, Color line) {
+        this.suffix = suffix;
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.fill = fill;
+        this.line = line;
+    }
+
+    String keyFor(String symbol) {
+        return String.format("%s_%s.jpg", symbol, suffix);
+    }
+}
@@ -0,0 +1,322 @@
+package com.ubiswal.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Cross symbol stage that runs once every symbol has been analyzed:
+ *   - "5_correlated": the symbols whose recent returns correlate best with this one, as "SYMB:corr;SYMB:corr;...".
+ *   - "6_moverRank": rank of the symbol's move across all symbols, as "rank;count;pct".
+ *   - "7_sectorRank": rank of the move within its sector, as "sector;rank;count;pct relative to the sector mean".
+ *
+ * Returns are aligned on the latest `window` bar times seen across all symbols and z-scored, so that a pairwise
+ * correlation is a plain dot product. The matrix is computed in tiles of TILE x TILE symbols, small enough to keep
+ * both sets of rows in cache, and the tiles are spread over the fork/join common pool.
+ */
+public class CrossSection {
+    private static final int TILE = 32;
+    private static final int TILES_PER_TASK = 4;
+
+    private final int window;
+    private final int topN;
+    private final Map<String, String> sectors;
+
+    // window: number of bar returns correlated, topN: correlated symbols published, sectors: symbol -> sector.
+    public CrossSection(int window, int topN, Map<String, String> sectors) {
+        this.window = window;
+        this.topN = topN;
+        this.sectors = sectors == null ? Collections.emptyMap() : sectors;
+    }
+
+    boolean isEnabled() {
+        return window > 1;
+    }
+
+    // symbol -> (Dynamo type -> value) for every symbol that has a state.
+    Map<String, Map<String, String>> compute(List<String> symbols, AnalysisState analysisState) {
+        List<String> present = new ArrayList<>();
+        List<StockState> states = new ArrayList<>();
+        for (String symbol : symbols) {
+            StockState state = analysisState.getStock(symbol);
+            if (state != null && state.getTimes().length > 0) {
+                present.add(symbol);
+                states.add(state);
+            }
+        }
+        Map<String, Map<String, String>> results = new LinkedHashMap<>();
+        for (String symbol : present) {
+            results.put(symbol, new LinkedHashMap<>());
+        }
+        if (present.size() > 1 && topN > 0) {
+            correlations(present, states, results);
+        }
+        moverRanks(present, states, results);
+        return results;
+    }
+
+    private void correlations(List<String> symbols, List<StockState> states, Map<String, Map<String, String>> results) {
+        long[] grid = alignedTimes(states);
+        int returns = grid.length - 1;
+        if (returns < 2) {
+            return;
+        }
+        // z-scored returns of the symbols that moved at all during the window, one row per symbol
+        float[] rows = new float[symbols.size() * returns];
+        int[] rowSymbol = new int[symbols.size()];
+        int n = 0;
+        for (int s = 0; s < symbols.size(); s++) {
+            if (standardizedReturns(states.get(s), grid, rows, n * returns)) {
+                rowSymbol[n++] = s;
+            }
+        }
+        if (n < 2) {
+            return;
+        }
+        float[] matrix = new float[n * n];
+        int tiles = (n + TILE - 1) / TILE;
+        ForkJoinPool.commonPool().invoke(new TilePairs(rows, returns, n, matrix, tiles, 0, tiles * (tiles + 1) / 2));
+
+        int keep = Math.min(topN, n - 1);
+        for (int i = 0; i < n; i++) {
+            int[] best = topCorrelated(matrix, n, i, keep);
+            StringBuilder value = new StringBuilder();
+            for (int k = 0; k < best.length; k++) {
+                if (k > 0) {
+                    value.append(';');
+                }
+                value.append(symbols.get(rowSymbol[best[k]])).append(':').append(matrix[i * n + best[k]]);
+            }
+            results.get(symbols.get(rowSymbol[i])).put("5_correlated", value.toString());
+        }
+    }
+
+    // The latest window + 1 distinct bar times across all symbols.
+    private long[] alignedTimes(List<StockState> states) {
+        int total = 0;
+        for (StockState state : states) {
+            total += Math.min(state.getTimes().length, window + 1);
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for (StockState state : states) {
+            long[] times = state.getTimes();
+            int take = Math.min(times.length, window + 1);
+            System.arraycopy(times, times.length - take, all, at, take);
+            at += take;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (distinct == 0 || all[distinct - 1] != all[i]) {
+                all[distinct++] = all[i];
+            }
+        }
+        int from = Math.max(0, distinct - (window + 1));
+        return Arrays.copyOfRange(all, from, distinct);
+    }
+
+    /*
+     * Log returns between consecutive grid times, closes carried forward over missing bars, scaled to zero mean and
+     * unit length. Returns false if the symbol has no bar before the window or never moved during it.
+     */
+    private static boolean standardizedReturns(StockState state, long[] grid, float[] rows, int offset) {
+        long[] times = state.getTimes();
+        float[] closes = state.getCloses();
+        int bar = Arrays.binarySearch(times, grid[0]);
+        bar = bar >= 0 ? bar : -bar - 2;
+        if (bar < 0) {
+            return false;
+        }
+        int returns = grid.length - 1;
+        double previous = closes[bar];
+        double sum = 0;
+        for (int k = 1; k <= returns; k++) {
+            while (bar + 1 < times.length && times[bar + 1] <= grid[k]) {
+                bar++;
+            }
+            double close = closes[bar];
+            double r = previous > 0 && close > 0 ? Math.log(close / previous) : 0;
+            rows[offset + k - 1] = (float) r;
+            sum += r;
+            previous = close;
+        }
+        double mean = sum / returns;
+        double squares = 0;
+        for (int k = 0; k < returns; k++) {
+            double d = rows[offset + k] - mean;
+            squares += d * d;
+        }
+        if (squares == 0) {
+            return false;
+        }
+        double scale = 1 / Math.sqrt(squares);
+        for (int k = 0; k < returns; k++) {
+            rows[offset + k] = (float) ((rows[offset + k] - mean) * scale);
+        }
+        return true;
+    }
+
+    // Indexes of the `keep` largest correlations in row i, excluding i itself, best first.
+    private static int[] topCorrelated(float[] matrix, int n, int i, int keep) {
+        int[] best = new int[keep];
+        int size = 0;
+        for (int j = 0; j < n; j++) {
+            if (j == i) {
+                continue;
+            }
+            float corr = matrix[i * n + j];
+            if (size == keep && corr <= matrix[i * n + best[size - 1]]) {
+                continue;
+            }
+            int at = size < keep ? size++ : keep - 1;
+            while (at > 0 && matrix[i * n + best[at - 1]] < corr) {
+                best[at] = best[at - 1];
+                at--;
+            }
+            best[at] = j;
+        }
+        return best;
+    }
+
+    // Splits the upper triangle of tile pairs, numbered row by row, until a task has TILES_PER_TASK pairs or fewer.
+    private static final class TilePairs extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] rows;
+        private final int length;
+        private final int n;
+        private final float[] matrix;
+        private final int tiles;
+        private final int from;
+        private final int to;
+
+        TilePairs(float[] rows, int length, int n, float[] matrix, int tiles, int from, int to) {
+            this.rows = rows;
+            this.length = length;
+            this.n = n;
+            this.matrix = matrix;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TILES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TilePairs(rows, length, n, matrix, tiles, from, mid),
+                        new TilePairs(rows, length, n, matrix, tiles, mid, to));
+                return;
+            }
+            int ti = 0;
+            int first = 0;
+            while (first + tiles - ti <= from) {
+                first += tiles - ti;
+                ti++;
+            }
+            int tj = ti + from - first;
+            for (int pair = from; pair < to; pair++) {
+                tile(ti, tj);
+                if (++tj == tiles) {
+                    ti++;
+                    tj = ti;
+                }
+            }
+        }
+
+        // Row i is streamed once for every four rows j, which stay in registers as four separate sums.
+        private void tile(int ti, int tj) {
+            int iEnd = Math.min(n, (ti + 1) * TILE);
+            int jEnd = Math.min(n, (tj + 1) * TILE);
+            for (int i = ti * TILE; i < iEnd; i++) {
+                int j = ti == tj ? i : tj * TILE;
+                for (; j + 3 < jEnd; j += 4) {
+                    dot4(i, j);
+                }
+                for (; j < jEnd; j++) {
+                    store(i, j, dot(i, j));
+                }
+            }
+        }
+
+        private void dot4(int i, int j) {
+            int a = i * length;
+            int b0 = j * length;
+            int b1 = b0 + length;
+            int b2 = b1 + length;
+            int b3 = b2 + length;
+            float s0 = 0;
+            float s1 = 0;
+            float s2 = 0;
+            float s3 = 0;
+            for (int k = 0; k < length; k++) {
+                float x = rows[a + k];
+                s0 += x * rows[b0 + k];
+                s1 += x * rows[b1 + k];
+                s2 += x * rows[b2 + k];
+                s3 += x * rows[b3 + k];
+            }
+            store(i, j, s0);
+            store(i, j + 1, s1);
+            store(i, j + 2, s2);
+            store(i, j + 3, s3);
+        }
+
+        private float dot(int i, int j) {
+            int a = i * length;
+            int b = j * length;
+            float sum = 0;
+            for (int k = 0; k < length; k++) {
+                sum += rows[a + k] * rows[b + k];
+            }
+            return sum;
+        }
+
+        private void store(int i, int j, float corr) {
+            matrix[i * n + j] = corr;
+            matrix[j * n + i] = corr;
+        }
+    }
+
+    // Percent move over the whole series, the same span as "3_diff", ranked across all symbols and within sectors.
+    private void moverRanks(List<String> symbols, List<StockState> states, Map<String, Map<String, String>> results) {
+        List<Integer> ranked = new ArrayList<>();
+        float[] moves = new float[symbols.size()];
+        for (int s = 0; s < symbols.size(); s++) {
+            StockState state = states.get(s);
+            if (state.getFirstOpen() > 0) {
+                moves[s] = (state.getLastClose() - state.getFirstOpen()) / state.getFirstOpen() * 100;
+                ranked.add(s);
+            }
+        }
+        ranked.sort((a, b) -> Float.compare(moves[b], moves[a]));
+        Map<String, List<Integer>> bySector = new HashMap<>();
+        for (int rank = 0; rank < ranked.size(); rank++) {
+            int s = ranked.get(rank);
+            results.get(symbols.get(s)).put("6_moverRank", String.format("%d;%d;%s", rank + 1, ranked.size(), moves[s]));
+            String sector = sectors.get(symbols.get(s));
+            if (sector != null) {
+                bySector.computeIfAbsent(sector, key -> new ArrayList<>()).add(s);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> sector : bySector.entrySet()) {
+            List<Integer> members = sector.getValue();
+            float mean = 0;
+            for (int s : members) {
+                mean += moves[s] / members.size();
+            }
+            for (int rank = 0; rank < members.size(); rank++) {
+                int s = members.get(rank);
+                results.get(symbols.get(s)).put("7_sectorRank",
+                        String.format("%s;%d;%d;%s", sector.getKey(), rank + 1, members.size(), moves[s] - mean));
+            }
+        }
+    }
+}
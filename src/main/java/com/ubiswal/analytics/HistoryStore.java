@@ -0,0 +1,331 @@
+package com.ubiswal.analytics;
+
+import com.twitter.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Local history of every symbol's bars, so analytics can look further back than the single stock.json of the
+ * latest hour. Each symbol gets one segment file per month, <directory>/<symbol>/<yyyy-MM>.bars:
+ *
+ *   header: int magic, int version, long record count
+ *   records: long time, float open, float high, float low, float close, long volume (32 bytes each)
+ *
+ * Records are appended in time order, so the fixed width records double as the time index and a range lookup is
+ * a binary search. Segments are memory mapped when first read or written, so nothing has to be loaded after a
+ * restart and appends are plain memory writes. Bars older than the latest stored bar are skipped; a new version of
+ * the latest bar replaces it. Next to the segments, <directory>/<symbol>/alerted holds the time of the latest bar
+ * alerts were evaluated for, so a restart does not raise them again.
+ */
+public class HistoryStore implements Closeable {
+    private static final int MAGIC = 0x42415253; // "BARS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 32;
+    private static final int BARS_PER_DAY = 24 * 60 / 5;
+    private static final String SUFFIX = ".bars";
+    private static final String ALERTED = "alerted";
+
+    private final Path directory;
+    private final Map<String, SymbolHistory> symbols = new ConcurrentHashMap<>();
+    private Logger log = Logger.get(this.getClass());
+
+    public HistoryStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    // Stores the bars of the series not seen yet and returns how many were added or replaced.
+    int append(String symbol, PriceSeries series) throws IOException {
+        return history(symbol).append(series);
+    }
+
+    // Bars with from <= time < to, across as many segments as needed.
+    PriceSeries range(String symbol, long from, long to) throws IOException {
+        return history(symbol).range(from, to);
+    }
+
+    // Time of the latest bar the symbol's alerts were evaluated up to, Long.MIN_VALUE if they never were.
+    long alertedUntil(String symbol) throws IOException {
+        Path file = directory.resolve(symbol).resolve(ALERTED);
+        if (!Files.exists(file)) {
+            return Long.MIN_VALUE;
+        }
+        return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+    }
+
+    void putAlertedUntil(String symbol, long time) throws IOException {
+        Path file = directory.resolve(symbol).resolve(ALERTED);
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(ALERTED + ".tmp");
+        Files.write(temp, Long.toString(time).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void flush() {
+        for (SymbolHistory history : symbols.values()) {
+            history.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SymbolHistory history : symbols.values()) {
+            history.close();
+        }
+        symbols.clear();
+    }
+
+    private SymbolHistory history(String symbol) throws IOException {
+        SymbolHistory history = symbols.get(symbol);
+        if (history == null) {
+            SymbolHistory opened = new SymbolHistory(directory.resolve(symbol));
+            history = symbols.putIfAbsent(symbol, opened);
+            if (history == null) {
+                history = opened;
+                log.info(String.format("Found %d history segments for %s", opened.months.size(), symbol));
+            }
+        }
+        return history;
+    }
+
+    /*
+     * The segments of one symbol. Only the months the latest reads and appends touched stay mapped: a read evicts
+     * the months before its range, so a symbol keeps about one read window of mappings however long its history is.
+     */
+    private static final class SymbolHistory {
+        private final Path directory;
+        private final NavigableSet<YearMonth> months = new TreeSet<>(); // every segment on disk
+        private final NavigableMap<YearMonth, Segment> segments = new TreeMap<>(); // the mapped ones
+        private long lastTime = Long.MIN_VALUE;
+
+        SymbolHistory(Path directory) throws IOException {
+            this.directory = directory;
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    months.add(YearMonth.parse(name.substring(0, name.length() - SUFFIX.length())));
+                }
+            }
+            for (YearMonth month : months.descendingSet()) {
+                Segment segment = segment(month);
+                if (segment.count > 0) {
+                    lastTime = segment.time(segment.count - 1);
+                    break;
+                }
+            }
+        }
+
+        synchronized int append(PriceSeries series) throws IOException {
+            long[] time = series.getTime();
+            int changed = 0;
+            Segment segment = null;
+            for (int i = 0; i < series.getSize(); i++) {
+                long t = time[i];
+                if (t < lastTime) {
+                    continue;
+                }
+                YearMonth month = monthOf(t);
+                if (segment == null || !segment.month.equals(month)) {
+                    segment = segment(month);
+                }
+                if (t == lastTime) {
+                    segment.write(segment.count - 1, series, i);
+                } else {
+                    segment.append(series, i);
+                    lastTime = t;
+                }
+                changed++;
+            }
+            return changed;
+        }
+
+        synchronized PriceSeries range(long from, long to) throws IOException {
+            to = Math.min(to, lastTime + 1);
+            if (months.isEmpty() || from >= to) {
+                return new PriceSeries.Builder(0).build();
+            }
+            YearMonth firstMonth = monthOf(Math.max(from, 0));
+            evictBefore(firstMonth);
+            List<Segment> overlapping = new ArrayList<>();
+            List<int[]> bounds = new ArrayList<>();
+            int total = 0;
+            for (YearMonth month : months.subSet(firstMonth, true, monthOf(to - 1), true)) {
+                Segment segment = segment(month);
+                int start = segment.lowerBound(from);
+                int end = segment.lowerBound(to);
+                if (start < end) {
+                    overlapping.add(segment);
+                    bounds.add(new int[]{start, end});
+                    total += end - start;
+                }
+            }
+            long[] t = new long[total];
+            float[] o = new float[total];
+            float[] h = new float[total];
+            float[] l = new float[total];
+            float[] c = new float[total];
+            long[] v = new long[total];
+            int at = 0;
+            for (int s = 0; s < overlapping.size(); s++) {
+                Segment segment = overlapping.get(s);
+                for (int i = bounds.get(s)[0]; i < bounds.get(s)[1]; i++) {
+                    segment.read(i, at++, t, o, h, l, c, v);
+                }
+            }
+            return new PriceSeries(t, o, h, l, c, v);
+        }
+
+        synchronized void flush() {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        }
+
+        synchronized void close() {
+            flush();
+            segments.clear();
+        }
+
+        // The mapping of an evicted month is released once it is garbage collected.
+        private void evictBefore(YearMonth month) {
+            NavigableMap<YearMonth, Segment> old = segments.headMap(month, false);
+            for (Segment segment : old.values()) {
+                segment.buffer.force();
+            }
+            old.clear();
+        }
+
+        private Segment segment(YearMonth month) throws IOException {
+            Segment segment = segments.get(month);
+            if (segment == null) {
+                segment = Segment.open(directory.resolve(month + SUFFIX), month);
+                segments.put(month, segment);
+                months.add(month);
+            }
+            return segment;
+        }
+
+        private static YearMonth monthOf(long epochSeconds) {
+            return YearMonth.from(LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC));
+        }
+    }
+
+    /*
+     * One mapped month of bars. The mapping grows in place if the month has more bars than a 5 minute grid. The file
+     * is only open while it is being mapped, a mapping stays valid without it, so no file descriptors are held and an
+     * interrupt while mapping only fails that one call.
+     */
+    private static final class Segment {
+        private final YearMonth month;
+        private final Path file;
+        private MappedByteBuffer buffer;
+        private int capacity;
+        private int count;
+
+        private Segment(YearMonth month, Path file) {
+            this.month = month;
+            this.file = file;
+        }
+
+        static Segment open(Path file, YearMonth month) throws IOException {
+            Segment segment = new Segment(month, file);
+            boolean created;
+            int stored;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                created = channel.size() == 0;
+                stored = created ? 0 : (int) ((channel.size() - HEADER_BYTES) / RECORD_BYTES);
+            }
+            segment.map(Math.max(stored, month.lengthOfMonth() * BARS_PER_DAY));
+            if (created) {
+                segment.buffer.putInt(0, MAGIC);
+                segment.buffer.putInt(4, VERSION);
+                segment.buffer.putLong(8, 0);
+            } else if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                throw new IOException(String.format("%s is not a version %d history segment", file, VERSION));
+            }
+            segment.count = (int) segment.buffer.getLong(8);
+            return segment;
+        }
+
+        private void map(int records) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) records * RECORD_BYTES);
+            }
+            capacity = records;
+        }
+
+        long time(int idx) {
+            return buffer.getLong(offset(idx));
+        }
+
+        // Index of the first record with a time >= t.
+        int lowerBound(long t) {
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (time(mid) < t) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        void append(PriceSeries series, int bar) throws IOException {
+            if (count == capacity) {
+                map(capacity * 2);
+            }
+            write(count, series, bar);
+            count++;
+            buffer.putLong(8, count);
+        }
+
+        void write(int idx, PriceSeries series, int bar) {
+            int at = offset(idx);
+            buffer.putLong(at, series.getTime()[bar]);
+            buffer.putFloat(at + 8, series.getOpen()[bar]);
+            buffer.putFloat(at + 12, series.getHigh()[bar]);
+            buffer.putFloat(at + 16, series.getLow()[bar]);
+            buffer.putFloat(at + 20, series.getClose()[bar]);
+            buffer.putLong(at + 24, series.getVolume()[bar]);
+        }
+
+        void read(int idx, int to, long[] t, float[] o, float[] h, float[] l, float[] c, long[] v) {
+            int at = offset(idx);
+            t[to] = buffer.getLong(at);
+            o[to] = buffer.getFloat(at + 8);
+            h[to] = buffer.getFloat(at + 12);
+            l[to] = buffer.getFloat(at + 16);
+            c[to] = buffer.getFloat(at + 20);
+            v[to] = buffer.getLong(at + 24);
+        }
+
+        private static int offset(int idx) {
+            return HEADER_BYTES + idx * RECORD_BYTES;
+        }
+    }
+}
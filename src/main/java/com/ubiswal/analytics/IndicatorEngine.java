@@ -0,0 +1,233 @@
+package com.ubiswal.analytics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Computes every indicator for every configured timeframe in a single pass over a symbol's 5 minute bars.
+ * Larger timeframes are rolled up on the fly while the 5 minute bars stream by, and each timeframe keeps O(1)
+ * state per indicator. Indicators reading the same window (SMA, Bollinger bands) share one RollingWindow, so
+ * adding a metric costs a few arithmetic operations per bar instead of another scan of the series.
+ *
+ * Only the latest value of each indicator is published, as "4_ind_<timeframe>_<name>".
+ */
+public class IndicatorEngine {
+    private static final String TYPE_PREFIX = "4_ind_";
+    private static final int[] SMA_PERIODS = {20, 50};
+    private static final int[] EMA_PERIODS = {12, 26};
+    private static final int RSI_PERIOD = 14;
+    private static final int BOLLINGER_PERIOD = 20;
+    private static final double BOLLINGER_WIDTH = 2;
+    private static final int VOLATILITY_PERIOD = 20;
+
+    private final List<Timeframe> timeframes = new ArrayList<>();
+
+    // Labels of the timeframes to publish, e.g. ["5m", "15m", "1h", "1d"]. An empty list disables the indicators.
+    public IndicatorEngine(List<String> timeframes) {
+        for (String label : timeframes) {
+            this.timeframes.add(Timeframe.fromLabel(label));
+        }
+    }
+
+    boolean isEnabled() {
+        return !timeframes.isEmpty();
+    }
+
+    // Dynamo type -> value for the latest bar of each timeframe. Indicators without enough bars yet are left out.
+    Map<String, String> compute(PriceSeries series) {
+        TimeframeState[] states = new TimeframeState[timeframes.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new TimeframeState(timeframes.get(i));
+        }
+        long[] time = series.getTime();
+        float[] high = series.getHigh();
+        float[] low = series.getLow();
+        float[] close = series.getClose();
+        long[] volume = series.getVolume();
+        for (int i = 0; i < series.getSize(); i++) {
+            for (TimeframeState state : states) {
+                state.accept(time[i], high[i], low[i], close[i], volume[i]);
+            }
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (TimeframeState state : states) {
+            state.finish();
+            state.publish(values);
+        }
+        return values;
+    }
+
+    // Rolls 5 minute bars up into the timeframe's bars and feeds each completed bar to its indicators.
+    private static final class TimeframeState {
+        private final Timeframe timeframe;
+        private boolean pending;
+        private long bucket;
+        private float high;
+        private float low;
+        private float close;
+        private long volume;
+        private final Indicators indicators = new Indicators();
+
+        TimeframeState(Timeframe timeframe) {
+            this.timeframe = timeframe;
+        }
+
+        void accept(long t, float h, float l, float c, long v) {
+            long barBucket = timeframe.bucketOf(t);
+            if (pending && barBucket != bucket) {
+                finish();
+            }
+            if (!pending) {
+                pending = true;
+                bucket = barBucket;
+                high = h;
+                low = l;
+                volume = 0;
+            }
+            high = Math.max(high, h);
+            low = Math.min(low, l);
+            close = c;
+            volume += v;
+        }
+
+        // The bar still being filled is fed too, so the latest values include the current partial bar.
+        void finish() {
+            if (pending) {
+                indicators.accept(bucket, high, low, close, volume);
+                pending = false;
+            }
+        }
+
+        void publish(Map<String, String> values) {
+            indicators.publish(TYPE_PREFIX + timeframe.getLabel() + "_", values);
+        }
+    }
+
+    // O(1) per bar state of every indicator for one timeframe.
+    private static final class Indicators {
+        private final RollingWindow[] closeWindows;
+        private final RollingWindow bollingerWindow;
+        private final boolean ownBollingerWindow;
+        private final double[] emas = new double[EMA_PERIODS.length];
+        private final RollingWindow returns = new RollingWindow(VOLATILITY_PERIOD);
+        private int bars;
+        private double lastClose;
+        private double averageGain;
+        private double averageLoss;
+        private long sessionDay = Long.MIN_VALUE;
+        private double sessionPriceVolume;
+        private double sessionVolume;
+        private double vwap;
+
+        Indicators() {
+            closeWindows = new RollingWindow[SMA_PERIODS.length];
+            RollingWindow bollinger = null;
+            for (int i = 0; i < SMA_PERIODS.length; i++) {
+                closeWindows[i] = new RollingWindow(SMA_PERIODS[i]);
+                if (SMA_PERIODS[i] == BOLLINGER_PERIOD) {
+                    bollinger = closeWindows[i];
+                }
+            }
+            ownBollingerWindow = bollinger == null;
+            bollingerWindow = ownBollingerWindow ? new RollingWindow(BOLLINGER_PERIOD) : bollinger;
+        }
+
+        void accept(long time, float high, float low, float close, long volume) {
+            for (RollingWindow window : closeWindows) {
+                window.accept(close);
+            }
+            if (ownBollingerWindow) {
+                bollingerWindow.accept(close);
+            }
+            bars++;
+            acceptEmas(close);
+            if (bars > 1) {
+                acceptRsi(close - lastClose);
+                if (lastClose > 0 && close > 0) {
+                    returns.accept(Math.log(close / lastClose));
+                }
+            }
+            acceptVwap(time, high, low, close, volume);
+            lastClose = close;
+        }
+
+        // Seeded with the SMA of the first `period` closes, then smoothed with 2 / (period + 1).
+        private void acceptEmas(double close) {
+            for (int i = 0; i < EMA_PERIODS.length; i++) {
+                int period = EMA_PERIODS[i];
+                if (bars <= period) {
+                    emas[i] += close / period;
+                } else {
+                    emas[i] += (close - emas[i]) * 2 / (period + 1);
+                }
+            }
+        }
+
+        // Wilder's smoothing: plain averages over the first RSI_PERIOD changes, then a 1 / RSI_PERIOD decay.
+        private void acceptRsi(double change) {
+            double gain = Math.max(change, 0);
+            double loss = Math.max(-change, 0);
+            int changes = bars - 1;
+            if (changes <= RSI_PERIOD) {
+                averageGain += gain / RSI_PERIOD;
+                averageLoss += loss / RSI_PERIOD;
+            } else {
+                averageGain = (averageGain * (RSI_PERIOD - 1) + gain) / RSI_PERIOD;
+                averageLoss = (averageLoss * (RSI_PERIOD - 1) + loss) / RSI_PERIOD;
+            }
+        }
+
+        // Volume weighted typical price since the start of the bar's trading day.
+        private void acceptVwap(long time, float high, float low, float close, long volume) {
+            long day = Timeframe.D1.bucketOf(time);
+            if (day != sessionDay) {
+                sessionDay = day;
+                sessionPriceVolume = 0;
+                sessionVolume = 0;
+            }
+            double typical = (high + low + close) / 3.0;
+            sessionPriceVolume += typical * volume;
+            sessionVolume += volume;
+            vwap = sessionVolume > 0 ? sessionPriceVolume / sessionVolume : typical;
+        }
+
+        void publish(String prefix, Map<String, String> values) {
+            if (bars == 0) {
+                return;
+            }
+            for (int i = 0; i < SMA_PERIODS.length; i++) {
+                if (closeWindows[i].isFull()) {
+                    values.put(prefix + "sma" + SMA_PERIODS[i], format(closeWindows[i].mean()));
+                }
+            }
+            for (int i = 0; i < EMA_PERIODS.length; i++) {
+                if (bars >= EMA_PERIODS[i]) {
+                    values.put(prefix + "ema" + EMA_PERIODS[i], format(emas[i]));
+                }
+            }
+            if (bars >= EMA_PERIODS[EMA_PERIODS.length - 1]) {
+                values.put(prefix + "macd", format(emas[0] - emas[EMA_PERIODS.length - 1]));
+            }
+            if (bars > RSI_PERIOD) {
+                double rsi = averageLoss == 0 ? 100 : 100 - 100 / (1 + averageGain / averageLoss);
+                values.put(prefix + "rsi" + RSI_PERIOD, format(rsi));
+            }
+            if (bollingerWindow.isFull()) {
+                double middle = bollingerWindow.mean();
+                double width = BOLLINGER_WIDTH * bollingerWindow.stdDev();
+                values.put(prefix + "bbUpper" + BOLLINGER_PERIOD, format(middle + width));
+                values.put(prefix + "bbLower" + BOLLINGER_PERIOD, format(middle - width));
+            }
+            if (returns.isFull()) {
+                values.put(prefix + "vol" + VOLATILITY_PERIOD, format(returns.stdDev()));
+            }
+            values.put(prefix + "vwap", format(vwap));
+        }
+
+        private static String format(double value) {
+            return Float.toString((float) value);
+        }
+    }
+}
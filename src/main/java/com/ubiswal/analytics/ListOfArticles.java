@@ -0,0 +1,17 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+// Holds only the articles that passed validation, see ArticlesDeserializer.
+@JsonIgnoreProperties(ignoreUnknown = true)
+class ListOfArticles{
+    @Getter
+    @Setter
+    @JsonDeserialize(using = ArticlesDeserializer.class)
+    private List<Article> articles;
+}
@@ -1,146 +1,158 @@
 package com.ubiswal.analytics;
 
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.SdkClientException;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
-import com.amazonaws.services.dynamodbv2.model.PutItemResult;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.model.S3ObjectInputStream;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.twitter.logging.Logger;
-import lombok.Getter;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.storage.AnalyticsSink;
+import com.ubiswal.storage.InputSource;
+import com.ubiswal.storage.JsonObjects;
 import lombok.Setter;
-import org.apache.commons.io.FileUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
-@JsonIgnoreProperties(ignoreUnknown = true)
-class Source{
-    @Getter
-    @Setter
-    private String name;
-}
-@JsonIgnoreProperties(ignoreUnknown = true)
-class Article{
-    @Getter
-    @Setter
-    private Source source;
-    @Getter
-    @Setter
-    private String author;
-    @Getter
-    @Setter
-    private String description;
-    @Getter
-    @Setter
-    private String url;
-    @Getter
-    @Setter
-    private String urlToImage;
-}
-
-@JsonIgnoreProperties(ignoreUnknown = true)
-class ListOfArticles{
-    @Getter
-    @Setter
-    private List<Article> articles;
-}
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class NewsAnalyzer extends AbstractAnalyzer {
-    private AmazonS3 s3Client;
-    private List<String> stockSymbols;
-    private String bucketName;
-    private AmazonDynamoDB dynamoDBClient;
+    private static final ObjectReader ARTICLES_READER = JsonObjects.readerFor(ListOfArticles.class);
+    private static final int SLOTS = 9;
+    private static final String ARTICLE_TYPE_PREFIX = "100_newsarticle_";
+    @Setter
+    private volatile List<String> stockSymbols; // replaced between runs when the configured symbols change
+    private AnalysisState analysisState;
+    private NewsIndex newsIndex;
     private Logger log = Logger.get(this.getClass());
 
-    public NewsAnalyzer(AmazonS3 s3Client, AmazonDynamoDB dynamoDBClient, List<String> stockSymbols, String bucketName) {
-        super(s3Client, bucketName);
-        this.s3Client = s3Client;
-        this.dynamoDBClient = dynamoDBClient;
+    public NewsAnalyzer(InputSource inputSource, PartitionDiscovery partitions, AnalyticsSink analyticsSink, AnalysisState analysisState, NewsIndex newsIndex, List<String> stockSymbols, String analysisDate, int poolSize) {
+        super(inputSource, partitions, analyticsSink, analysisDate, poolSize);
+        this.analysisState = analysisState;
+        this.newsIndex = newsIndex;
         this.stockSymbols = stockSymbols;
-        this.bucketName = bucketName;
     }
 
-    private boolean validateArticle(Article article) {
-        return (article.getUrl() != null && article.getUrl().trim() != "") &&
-                (article.getAuthor() != null && article.getAuthor().trim() != "") &&
-                (article.getDescription() != null && article.getDescription().trim() != "");
+    // Returns null if news.json still has the ETag seen in the last run.
+    private JsonObjects.Versioned<ListOfArticles> convertS3JsonToClass(String symbol, String currentDate, String hour, String lastETag) throws IOException {
+        return readInput(newsKey(symbol, currentDate, hour), lastETag, ARTICLES_READER, PayloadCodecs.ARTICLES);
     }
 
-    private ListOfArticles convertS3JsonToClass(String symbol, String currentDate, String hour) throws IOException {
-        S3Object s3obj = s3Client.getObject(bucketName, String.format("%s/%s/%s/news.json", currentDate, hour, symbol));
-        S3ObjectInputStream inputStream = s3obj.getObjectContent();
-        FileUtils.copyInputStreamToFile(inputStream, new File("news.json"));
-
-        //use jackson for json to class conversion
-        ObjectMapper mapper = new ObjectMapper();
-        // JSON file to Java object
-        ListOfArticles stockNewsObj = mapper.readValue(new File("news.json"), ListOfArticles.class);
-        return stockNewsObj;
+    private static String newsKey(String symbol, String currentDate, String hour) {
+        return String.format("%s/%s/%s/news.json", currentDate, hour, symbol);
     }
 
 
     //convert all stocks json to Objects
     @Override
     public void runAnalyzer() {
-        String currentDate = todaysDate();
-        String hour = Integer.toString(findLatestHourInBucket());
+        String currentDate = analysisDate();
+        String hour = Integer.toString(findLatestHourInBucket(currentDate));
         if (hour.equals("-1")){
             log.warning(String.format("Did not find any directory with current date %s", currentDate));
             return;
         }
-        for (String symbol : stockSymbols) {
-            try {
-                log.info(String.format("Running news analyzer for symbol %s",symbol));
-                ListOfArticles stockObj = convertS3JsonToClass(symbol, currentDate, hour);
-                int i = 0;
-                for (Article entry: stockObj.getArticles().subList(0,Math.min(9, stockObj.getArticles().size()))) {
-                    if(!validateArticle(entry)) {
-                        log.error(String.format("The following article failed validation. Skipping.:\n%s\n", entry));
-                        continue;
-                    }
-                    saveNewsArticleToDynamo(i, entry, symbol);
-                    i++;
-                }
-            } catch (IOException | SdkClientException e) {
-                e.printStackTrace();
+        analyzeAll(stockSymbols, currentDate, hour);
+    }
+
+    @Override
+    protected boolean analyzeSymbol(String symbol, String currentDate, String hour) {
+        try {
+            log.info(String.format("Running news analyzer for symbol %s",symbol));
+            JsonObjects.Versioned<ListOfArticles> input = convertS3JsonToClass(symbol, currentDate, hour, analysisState.getNewsETag(symbol));
+            if (input == null) {
+                log.info(String.format("News for %s has not changed since the last run. Skipping.", symbol));
+                return true;
+            }
+            publishArticles(symbol, input);
+            return true;
+        } catch (IOException | SdkClientException e) {
+            recordFailure(symbol, e);
+            return false;
+        }
+    }
+
+    // Same as analyzeSymbol, with the download, parsing and deduplication on their own stages.
+    @Override
+    protected CompletableFuture<?> pipelineSymbol(Pipeline.Run run, String symbol, String currentDate, String hour) {
+        CompletableFuture<JsonObjects.Versioned<byte[]>> body = run.start(Pipeline.FETCH, () -> {
+            log.info(String.format("Running news analyzer for symbol %s",symbol));
+            JsonObjects.Versioned<byte[]> fetched = fetchInput(newsKey(symbol, currentDate, hour), analysisState.getNewsETag(symbol));
+            if (fetched == null) {
+                log.info(String.format("News for %s has not changed since the last run. Skipping.", symbol));
+            }
+            return fetched;
+        });
+        CompletableFuture<JsonObjects.Versioned<ListOfArticles>> input = run.then(body, Pipeline.DECODE, fetched -> parseInput(newsKey(symbol, currentDate, hour), fetched, ARTICLES_READER, PayloadCodecs.ARTICLES));
+        return run.then(input, Pipeline.ANALYZE, parsed -> {
+            publishArticles(symbol, parsed);
+            return parsed;
+        });
+    }
+
+    private void publishArticles(String symbol, JsonObjects.Versioned<ListOfArticles> input) {
+        ListOfArticles stockObj = input.getValue();
+        // the first SLOTS articles of distinct stories, in the crawler's order
+        long[] previousSlots = analysisState.getNewsSlots(symbol);
+        long[] slots = new long[SLOTS];
+        Set<Long> stories = new HashSet<>();
+        int i = 0;
+        for (Article entry: stockObj.getArticles()) {
+            if (i == SLOTS) {
+                break;
+            }
+            long story = newsIndex.story(entry.getUrl(), entry.getDescription());
+            if (!stories.add(story)) {
+                Metrics.counter("analytics_duplicate_articles_total").inc();
+                continue;
+            }
+            slots[i] = story;
+            if (previousSlots != null && previousSlots[i] == story) {
+                // the slot already holds this story from an earlier run or hour
+                Metrics.counter("analytics_unchanged_articles_total").inc();
+            } else {
+                saveNewsArticleToDynamo(i, entry, symbol, newsIndex.articles(story));
+            }
+            i++;
+        }
+        // slots left over from a longer list would otherwise keep showing old stories
+        Set<String> stale = new HashSet<>();
+        for (int slot = i; previousSlots != null && slot < SLOTS; slot++) {
+            if (previousSlots[slot] != 0) {
+                stale.add(ARTICLE_TYPE_PREFIX + slot);
             }
         }
+        if (!stale.isEmpty()) {
+            analyticsSink.delete(symbol, stale::contains);
+        }
+        analyticsSink.onCommit(symbol, () -> {
+            analysisState.putNewsSlots(symbol, slots);
+            analysisState.putNewsETag(symbol, input.getETag());
+        });
     }
 
-    private  void saveNewsArticleToDynamo(int articleNum, Article article, String symbol){
-        PutItemRequest request = new PutItemRequest();
-        request.setTableName("Analytics-testing");
+    static boolean isArticleType(String type) {
+        return type.startsWith(ARTICLE_TYPE_PREFIX);
+    }
 
-        Map<String, AttributeValue> map = new HashMap<>();
-        map.put("symb", new AttributeValue().withS(symbol));
-        map.put("type", new AttributeValue().withS(String.format("100_newsarticle_%d", articleNum)));
-        map.put("url", new AttributeValue().withS(article.getUrl()));
+    // `related` is the number of distinct urls seen for the article's story, including this one.
+    private  void saveNewsArticleToDynamo(int articleNum, Article article, String symbol, int related){
+        Map<String, String> map = new HashMap<>();
+        map.put("symb", symbol);
+        map.put("type", ARTICLE_TYPE_PREFIX + articleNum);
+        map.put("url", article.getUrl());
         if (article.getUrlToImage() == null) {
             log.warning(String.format("Url to image is empty for news article for symbol %s article %s", symbol, article.getDescription()));
-            map.put("url2image", new AttributeValue().withS("https://ubiswal-website-contents.s3.amazonaws.com/news-icon.png"));
+            map.put("url2image", "https://ubiswal-website-contents.s3.amazonaws.com/news-icon.png");
         } else {
-            map.put("url2image", new AttributeValue().withS(article.getUrlToImage()));
-        }
-        map.put("desc", new AttributeValue().withS(article.getDescription()));
-        map.put("src", new AttributeValue().withS(article.getSource().getName()));
-        request.setItem(map);
-        try {
-            PutItemResult result = dynamoDBClient.putItem(request);
-            log.info(String.format("Saved the article num %d for stock %s", articleNum, symbol));
-        } catch (AmazonServiceException e) {
-
-            log.error(e, String.format("Source = %s\nauthor = %s\ndescription = %s\nurl= %s\nurlToImg =  %s",article.getSource(), article.getAuthor(), article.getDescription(), article.getUrl(), article.getUrlToImage()));
-
+            map.put("url2image", article.getUrlToImage());
         }
+        map.put("desc", article.getDescription());
+        map.put("src", article.getSource().getName());
+        map.put("related", Integer.toString(related));
+        analyticsSink.put(map);
+        log.info(String.format("Queued the article num %d for stock %s", articleNum, symbol));
     }
 
 }
@@ -0,0 +1,228 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Groups news articles into stories, so that the same syndicated article is recognized under every symbol and hour
+ * it shows up in. An article joins a story if its url was seen before, or if its description is a near duplicate of
+ * the story's first description:
+ *
+ *   - urls are kept as 64 bit hashes of the url without scheme, "www." and fragment.
+ *   - descriptions are MinHashed over word 3-grams into SIGNATURE_SIZE values. Locality sensitive hashing on BANDS
+ *     bands of ROWS values finds candidate stories, which are kept if at least SIMILARITY of the values agree.
+ *
+ * Each table is bounded to `capacity` entries, least recently seen first out, and entries not seen for `ttlMillis`
+ * are dropped, so memory does not grow with the number of articles ever seen.
+ */
+public class NewsIndex {
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int SIGNATURE_SIZE = BANDS * ROWS;
+    private static final double SIMILARITY = 0.6;
+    private static final int SHINGLE_WORDS = 3;
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed | 1;
+        }
+    }
+
+    private static final class Story {
+        final long id;
+        final int[] signature;
+        int articles; // distinct urls seen in this story
+        long lastSeen;
+
+        Story(long id, int[] signature) {
+            this.id = id;
+            this.signature = signature;
+        }
+    }
+
+    // Evicts the least recently used entry once it holds more than `capacity` entries.
+    private static final class Table<V> extends LinkedHashMap<Long, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Table(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Table<Story> stories;
+    private final Table<Long> urls; // url hash -> story id
+    private final Table<Long> bands; // band hash -> story id
+    private long nextStory = 1;
+
+    public NewsIndex(int capacity, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.stories = new Table<>(capacity);
+        this.urls = new Table<>(capacity);
+        this.bands = new Table<>(capacity * BANDS);
+        Metrics.gauge("analytics_news_stories", this::size);
+    }
+
+    // Id of the story the article belongs to, starting a new story if it matches none.
+    synchronized long story(String url, String description) {
+        long now = System.currentTimeMillis();
+        long urlHash = hash64(normalizeUrl(url));
+        Story story = live(urls.get(urlHash), now);
+        if (story != null) {
+            story.lastSeen = now;
+            return story.id;
+        }
+        int[] signature = signature(description);
+        long[] bandHashes = bandHashes(signature);
+        for (long bandHash : bandHashes) {
+            Story candidate = live(bands.get(bandHash), now);
+            if (candidate != null && similarity(signature, candidate.signature) >= SIMILARITY) {
+                story = candidate;
+                break;
+            }
+        }
+        if (story == null) {
+            story = new Story(nextStory++, signature);
+            stories.put(story.id, story);
+        }
+        for (long bandHash : bandHashes) {
+            bands.put(bandHash, story.id);
+        }
+        urls.put(urlHash, story.id);
+        story.articles++;
+        story.lastSeen = now;
+        return story.id;
+    }
+
+    // Number of distinct urls seen in the story, 0 if it has been evicted.
+    synchronized int articles(long storyId) {
+        Story story = stories.get(storyId);
+        return story == null ? 0 : story.articles;
+    }
+
+    synchronized int size() {
+        return stories.size();
+    }
+
+    // The story behind a table entry, or null if it is gone or has not been seen for ttlMillis.
+    private Story live(Long storyId, long now) {
+        if (storyId == null) {
+            return null;
+        }
+        Story story = stories.get(storyId);
+        if (story != null && now - story.lastSeen > ttlMillis) {
+            stories.remove(storyId);
+            return null;
+        }
+        return story;
+    }
+
+    static String normalizeUrl(String url) {
+        String normalized = url.trim();
+        int fragment = normalized.indexOf('#');
+        if (fragment >= 0) {
+            normalized = normalized.substring(0, fragment);
+        }
+        int scheme = normalized.indexOf("://");
+        if (scheme >= 0) {
+            normalized = normalized.substring(scheme + 3);
+        }
+        if (normalized.regionMatches(true, 0, "www.", 0, 4)) {
+            normalized = normalized.substring(4);
+        }
+        int path = normalized.indexOf('/');
+        String host = path < 0 ? normalized : normalized.substring(0, path);
+        String rest = path < 0 ? "" : normalized.substring(path);
+        if (rest.endsWith("/")) {
+            rest = rest.substring(0, rest.length() - 1);
+        }
+        return host.toLowerCase(Locale.ROOT) + rest;
+    }
+
+    // Per seed minimum of the hashes of all word 3-grams, or of the words if there are fewer.
+    static int[] signature(String description) {
+        List<Long> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= description.length(); i++) {
+            boolean letter = i < description.length() && Character.isLetterOrDigit(description.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(hash64(description.substring(start, i).toLowerCase(Locale.ROOT)));
+                start = -1;
+            }
+        }
+        int[] signature = new int[SIGNATURE_SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        int shingles = Math.max(1, words.size() - SHINGLE_WORDS + 1);
+        for (int s = 0; s < shingles && !words.isEmpty(); s++) {
+            long shingle = 0;
+            for (int w = s; w < Math.min(words.size(), s + SHINGLE_WORDS); w++) {
+                shingle = mix(shingle ^ words.get(w));
+            }
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                int h = (int) ((shingle * SEEDS[i]) >>> 33);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static long[] bandHashes(int[] signature) {
+        long[] hashes = new long[BANDS];
+        for (int b = 0; b < BANDS; b++) {
+            long h = b;
+            for (int r = 0; r < ROWS; r++) {
+                h = mix(h * 31 + signature[b * ROWS + r]);
+            }
+            hashes[b] = h;
+        }
+        return hashes;
+    }
+
+    private static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / SIGNATURE_SIZE;
+    }
+
+    // FNV-1a over the chars, finished with mix.
+    private static long hash64(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
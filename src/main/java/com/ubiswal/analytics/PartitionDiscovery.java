@@ -0,0 +1,150 @@
+package com.ubiswal.analytics;
+
+import com.twitter.logging.Logger;
+import com.ubiswal.storage.InputSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Finds the latest <date>/<hour>/ partition written by the crawler. Hours are listed as common prefixes with a
+ * "/" delimiter, so a listing returns one entry per hour instead of one per object.
+ * Results are cached per date and shared by all analyzers.
+ *
+ * In watch mode the cache no longer expires. Instead a background task probes for the next hour's prefix with a
+ * single-key listing and only re-lists the day when that probe finds something, or after `fullListSeconds`.
+ */
+public class PartitionDiscovery {
+    public interface HourListener {
+        void onNewHour(String date, int hour);
+    }
+
+    private static final class CachedHour {
+        final int hour;
+        final long listedAt;
+
+        CachedHour(int hour, long listedAt) {
+            this.hour = hour;
+            this.listedAt = listedAt;
+        }
+    }
+
+    private final InputSource inputSource;
+    private final long cacheMillis;
+    private final Map<String, CachedHour> cache = new ConcurrentHashMap<>();
+    private final List<HourListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean watching;
+    private ScheduledExecutorService watcher;
+    private Logger log = Logger.get(this.getClass());
+
+    public PartitionDiscovery(InputSource inputSource, long cacheSeconds) {
+        this.inputSource = inputSource;
+        this.cacheMillis = TimeUnit.SECONDS.toMillis(cacheSeconds);
+    }
+
+    // Latest hour with data for the given date, or -1 if the crawler has not written anything for it yet.
+    public int latestHour(String date) {
+        CachedHour cached = cache.get(date);
+        long now = System.currentTimeMillis();
+        if (cached != null && (watching || now - cached.listedAt < cacheMillis)) {
+            return cached.hour;
+        }
+        return relist(date);
+    }
+
+    public void invalidate() {
+        cache.clear();
+    }
+
+    public void addListener(HourListener listener) {
+        listeners.add(listener);
+    }
+
+    // Crawler partitions are named after the current UTC date.
+    public static String currentDate() {
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return formatter.format(new Date());
+    }
+
+    public synchronized void watch(long probeSeconds, long fullListSeconds) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor();
+        watching = true;
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                probe(currentDate(), fullListSeconds);
+            } catch (RuntimeException e) {
+                log.error(e, "Failed to probe for new partitions");
+            }
+        }, 0, probeSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+        watching = false;
+    }
+
+    private void probe(String date, long fullListSeconds) {
+        CachedHour cached = cache.get(date);
+        boolean due = cached == null || System.currentTimeMillis() - cached.listedAt >= TimeUnit.SECONDS.toMillis(fullListSeconds);
+        if (due || hasKeys(String.format("%s/%d/", date, cached.hour + 1))) {
+            relist(date);
+        }
+    }
+
+    private boolean hasKeys(String prefix) {
+        try {
+            return inputSource.hasKeys(prefix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int relist(String date) {
+        int maxHour = listLatestHour(date);
+        CachedHour previous = cache.put(date, new CachedHour(maxHour, System.currentTimeMillis()));
+        if (maxHour >= 0 && (previous == null || previous.hour < maxHour)) {
+            log.info(String.format("Latest partition for %s is now hour %d", date, maxHour));
+            for (HourListener listener : listeners) {
+                listener.onNewHour(date, maxHour);
+            }
+        }
+        return maxHour;
+    }
+
+    private int listLatestHour(String date) {
+        int maxHour = -1;
+        String prefix = date + "/";
+        List<String> hourPrefixes;
+        try {
+            hourPrefixes = inputSource.listCommonPrefixes(prefix, "/");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (String hourPrefix : hourPrefixes) {
+            String hour = hourPrefix.substring(prefix.length(), hourPrefix.length() - 1);
+            try {
+                maxHour = Math.max(maxHour, Integer.parseInt(hour));
+            } catch (NumberFormatException e) {
+                log.warning(String.format("Ignoring unexpected partition %s", hourPrefix));
+            }
+        }
+        return maxHour;
+    }
+}
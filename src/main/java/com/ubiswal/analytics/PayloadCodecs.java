@@ -0,0 +1,189 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.storage.SnapshotStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Snapshot codecs of the parsed crawler payloads.
+ *
+ * Stock prices are stored by column. Times are deltas from the previous bar, 300 for 5 minute bars, so one or two
+ * bytes each. A price column is stored as scaled integer deltas when every price in it round trips exactly through
+ * a decimal scale of at most MAX_SCALE digits, which is the case for the 4 digit prices alpha vantage reports, and
+ * as the xor of consecutive float bits otherwise. Volumes are plain varints. Decoding always gives back the exact
+ * floats the json parse produced.
+ *
+ * Articles are stored as the strings the analyzer uses, after validation and normalization.
+ */
+final class PayloadCodecs {
+    private static final int MAX_SCALE = 6;
+    private static final int RAW_BITS = 255;
+    private static final double[] POWERS = {1, 10, 100, 1e3, 1e4, 1e5, 1e6};
+
+    static final SnapshotStore.Codec<StockPrices> STOCK_PRICES = new SnapshotStore.Codec<StockPrices>() {
+        @Override
+        public void encode(StockPrices value, SnapshotStore.Writer out) {
+            PriceSeries series = value.getSeries();
+            if (series == null) {
+                out.varint(0);
+                return;
+            }
+            int size = series.getSize();
+            out.varint(size + 1L);
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                out.zigzag(series.getTime()[i] - previous);
+                previous = series.getTime()[i];
+            }
+            encodePrices(series.getOpen(), size, out);
+            encodePrices(series.getHigh(), size, out);
+            encodePrices(series.getLow(), size, out);
+            encodePrices(series.getClose(), size, out);
+            for (int i = 0; i < size; i++) {
+                out.zigzag(series.getVolume()[i]);
+            }
+        }
+
+        @Override
+        public StockPrices decode(SnapshotStore.Reader in) throws IOException {
+            StockPrices prices = new StockPrices();
+            long stored = in.varint();
+            if (stored == 0) {
+                return prices;
+            }
+            int size = checkedSize(stored - 1);
+            long[] time = new long[size];
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += in.zigzag();
+                time[i] = previous;
+            }
+            float[] open = decodePrices(size, in);
+            float[] high = decodePrices(size, in);
+            float[] low = decodePrices(size, in);
+            float[] close = decodePrices(size, in);
+            long[] volume = new long[size];
+            for (int i = 0; i < size; i++) {
+                volume[i] = in.zigzag();
+            }
+            prices.setSeries(new PriceSeries(time, open, high, low, close, volume));
+            return prices;
+        }
+    };
+
+    static final SnapshotStore.Codec<ListOfArticles> ARTICLES = new SnapshotStore.Codec<ListOfArticles>() {
+        @Override
+        public void encode(ListOfArticles value, SnapshotStore.Writer out) {
+            List<Article> articles = value.getArticles();
+            if (articles == null) {
+                out.varint(0);
+                return;
+            }
+            out.varint(articles.size() + 1L);
+            for (Article article : articles) {
+                out.string(article.getUrl());
+                out.string(article.getAuthor());
+                out.string(article.getDescription());
+                out.string(article.getUrlToImage());
+                out.string(article.getSource() == null ? null : article.getSource().getName());
+            }
+        }
+
+        @Override
+        public ListOfArticles decode(SnapshotStore.Reader in) throws IOException {
+            ListOfArticles value = new ListOfArticles();
+            long stored = in.varint();
+            if (stored == 0) {
+                return value;
+            }
+            int size = checkedSize(stored - 1);
+            List<Article> articles = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Article article = new Article();
+                article.setUrl(in.string());
+                article.setAuthor(in.string());
+                article.setDescription(in.string());
+                article.setUrlToImage(in.string());
+                String sourceName = in.string();
+                if (sourceName != null) {
+                    Source source = new Source();
+                    source.setName(sourceName);
+                    article.setSource(source);
+                }
+                articles.add(article);
+            }
+            value.setArticles(articles);
+            return value;
+        }
+    };
+
+    private PayloadCodecs() {
+    }
+
+    private static void encodePrices(float[] prices, int size, SnapshotStore.Writer out) {
+        int scale = scaleOf(prices, size);
+        out.varint(scale);
+        if (scale == RAW_BITS) {
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int bits = Float.floatToRawIntBits(prices[i]);
+                out.varint((bits ^ previous) & 0xFFFFFFFFL);
+                previous = bits;
+            }
+            return;
+        }
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long scaled = Math.round(prices[i] * POWERS[scale]);
+            out.zigzag(scaled - previous);
+            previous = scaled;
+        }
+    }
+
+    private static float[] decodePrices(int size, SnapshotStore.Reader in) throws IOException {
+        int scale = (int) in.varint();
+        float[] prices = new float[size];
+        if (scale == RAW_BITS) {
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous ^= (int) in.varint();
+                prices[i] = Float.intBitsToFloat(previous);
+            }
+            return prices;
+        }
+        if (scale > MAX_SCALE) {
+            throw new IOException(String.format("Unknown price scale %d", scale));
+        }
+        long scaled = 0;
+        for (int i = 0; i < size; i++) {
+            scaled += in.zigzag();
+            prices[i] = (float) (scaled / POWERS[scale]);
+        }
+        return prices;
+    }
+
+    // The smallest decimal scale every price round trips through exactly, or RAW_BITS if there is none.
+    private static int scaleOf(float[] prices, int size) {
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            boolean exact = true;
+            for (int i = 0; i < size && exact; i++) {
+                double scaled = prices[i] * POWERS[scale];
+                exact = Math.abs(scaled) < 1L << 53
+                        && Float.floatToRawIntBits((float) (Math.round(scaled) / POWERS[scale])) == Float.floatToRawIntBits(prices[i]);
+            }
+            if (exact) {
+                return scale;
+            }
+        }
+        return RAW_BITS;
+    }
+
+    private static int checkedSize(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Malformed snapshot size %d", size));
+        }
+        return (int) size;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ubiswal.analytics;
+
+import com.ubiswal.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pipelined execution of the analyzers: every stage has its own pool and a bounded queue, so that a symbol can be
+ * fetched while another is decoded, a third analyzed and a fourth's charts uploaded, and slow uploads cannot hold
+ * up parsing or analytics. Handing work to a stage whose queue is full blocks the handing thread, which pushes the
+ * backpressure up the chain to the loop submitting symbols, so throughput is bound by the slowest stage and memory
+ * by the queue sizes.
+ *
+ * The stages form a chain and a stage only ever waits on stages after it, so the blocking cannot deadlock.
+ * The pools are shared by both analyzers and live across runs.
+ */
+public class Pipeline {
+    static final String FETCH = "fetch";
+    static final String DECODE = "decode";
+    static final String ANALYZE = "analyze";
+    static final String RENDER = "render";
+    static final String UPLOAD = "upload";
+
+    @FunctionalInterface
+    interface Step<T, R> {
+        R apply(T input) throws Exception;
+    }
+
+    // Puts the task on the full queue, waiting for room, instead of rejecting it.
+    private static final RejectedExecutionHandler WAIT_FOR_ROOM = (task, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The pipeline is shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in a stage", e);
+        }
+    };
+
+    private final Map<String, ThreadPoolExecutor> stages = new LinkedHashMap<>();
+
+    // fetch and upload are network bound and can use many threads, decode, analyze and render are cpu bound.
+    public Pipeline(int fetchThreads, int decodeThreads, int analyzeThreads, int renderThreads, int uploadThreads, int queueSize) {
+        addStage(FETCH, fetchThreads, queueSize);
+        addStage(DECODE, decodeThreads, queueSize);
+        addStage(ANALYZE, analyzeThreads, queueSize);
+        addStage(RENDER, renderThreads, queueSize);
+        addStage(UPLOAD, uploadThreads, queueSize);
+    }
+
+    private void addStage(String name, int threads, int queueSize) {
+        int size = Math.max(1, threads);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), WAIT_FOR_ROOM);
+        // WAIT_FOR_ROOM queues without starting threads, so they have to be running already
+        pool.prestartAllCoreThreads();
+        stages.put(name, pool);
+        Metrics.gauge("analytics_queue_depth", pool.getQueue()::size, "queue", "pipeline_" + name);
+    }
+
+    Run newRun() {
+        return new Run();
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor pool : stages.values()) {
+            pool.shutdown();
+        }
+    }
+
+    // The symbols of one analyzer run. Cancelling it makes the steps not started yet fail instead of running.
+    final class Run {
+        private volatile boolean cancelled;
+
+        <R> CompletableFuture<R> start(String stage, Callable<R> first) {
+            return CompletableFuture.supplyAsync(() -> call(first), stages.get(stage));
+        }
+
+        // Runs the step on the stage once `previous` completes. A null result ends the symbol, later steps are skipped.
+        <T, R> CompletableFuture<R> then(CompletableFuture<T> previous, String stage, Step<T, R> step) {
+            return previous.thenCompose(input -> input == null
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.supplyAsync(() -> call(() -> step.apply(input)), stages.get(stage)));
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private <R> R call(Callable<R> step) {
+            if (cancelled) {
+                throw new CancellationException("The run was cancelled");
+            }
+            try {
+                return step.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+}
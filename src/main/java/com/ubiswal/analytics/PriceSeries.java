@@ -0,0 +1,218 @@
+package com.ubiswal.analytics;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/*
+ * Columnar view of one symbol's bars, sorted by time once when it is built. Every column has exactly `size`
+ * entries so the arrays can be handed to kernels and charts as they are.
+ *
+ * Times are the wall clock times reported by alpha vantage, encoded as epoch seconds as if they were UTC, so that
+ * they format back to the exact timestamp strings found in the crawler output.
+ */
+final class PriceSeries {
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Getter
+    private final int size;
+    @Getter
+    private final long[] time;
+    @Getter
+    private final float[] open;
+    @Getter
+    private final float[] high;
+    @Getter
+    private final float[] low;
+    @Getter
+    private final float[] close;
+    @Getter
+    private final long[] volume;
+
+    PriceSeries(long[] time, float[] open, float[] high, float[] low, float[] close, long[] volume) {
+        this.size = time.length;
+        this.time = time;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long firstTime() {
+        return time[0];
+    }
+
+    long lastTime() {
+        return time[size - 1];
+    }
+
+    String timestamp(int idx) {
+        return formatTimestamp(time[idx]);
+    }
+
+    static String formatTimestamp(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+    }
+
+    float maxHigh() {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, high[i]);
+        }
+        return max;
+    }
+
+    // (open + close + high + low) / 4 for every bar.
+    float[] averagePrices() {
+        float[] avg = new float[size];
+        for (int i = 0; i < size; i++) {
+            avg[i] = (open[i] + close[i] + high[i] + low[i]) / 4;
+        }
+        return avg;
+    }
+
+    // Parses "yyyy-MM-dd HH:mm:ss" (or a bare "yyyy-MM-dd") into wall clock epoch seconds.
+    static long parseTimestamp(String text) {
+        if (text.length() == 19 && text.charAt(4) == '-' && text.charAt(10) == ' ') {
+            long days = LocalDate.of(digits(text, 0, 4), digits(text, 5, 7), digits(text, 8, 10)).toEpochDay();
+            return days * 86400 + digits(text, 11, 13) * 3600 + digits(text, 14, 16) * 60 + digits(text, 17, 19);
+        }
+        if (text.length() == 10) {
+            return LocalDateTime.parse(text + " 00:00:00", TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+        }
+        return LocalDateTime.parse(text, TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException(String.format("Malformed timestamp %s", text));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Accumulates bars in arrival order, then sorts and trims them into a PriceSeries.
+    static final class Builder {
+        private int size;
+        private long[] time;
+        private float[] open;
+        private float[] high;
+        private float[] low;
+        private float[] close;
+        private long[] volume;
+
+        Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            time = new long[capacity];
+            open = new float[capacity];
+            high = new float[capacity];
+            low = new float[capacity];
+            close = new float[capacity];
+            volume = new long[capacity];
+        }
+
+        Builder add(long t, float o, float h, float l, float c, long v) {
+            if (size == time.length) {
+                int capacity = size * 2;
+                time = Arrays.copyOf(time, capacity);
+                open = Arrays.copyOf(open, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                close = Arrays.copyOf(close, capacity);
+                volume = Arrays.copyOf(volume, capacity);
+            }
+            time[size] = t;
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            volume[size] = v;
+            size++;
+            return this;
+        }
+
+        PriceSeries build() {
+            // alpha vantage lists bars newest first, so the common cases are already sorted or exactly reversed
+            if (isSorted()) {
+                return trimmed(null);
+            }
+            if (isReverseSorted()) {
+                int[] order = new int[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = size - 1 - i;
+                }
+                return trimmed(order);
+            }
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, (a, b) -> Long.compare(time[a], time[b]));
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+            return trimmed(order);
+        }
+
+        private boolean isSorted() {
+            for (int i = 1; i < size; i++) {
+                if (time[i - 1] >= time[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isReverseSorted() {
+            for (int i = 1; i < size; i++) {
+                if (time[i - 1] <= time[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Copies the columns in the given order (null keeps the current one), keeping the last bar of duplicate times.
+        private PriceSeries trimmed(int[] order) {
+            int n = 0;
+            long[] t = new long[size];
+            float[] o = new float[size];
+            float[] h = new float[size];
+            float[] l = new float[size];
+            float[] c = new float[size];
+            long[] v = new long[size];
+            for (int i = 0; i < size; i++) {
+                int src = order == null ? i : order[i];
+                if (n > 0 && t[n - 1] == time[src]) {
+                    n--;
+                }
+                t[n] = time[src];
+                o[n] = open[src];
+                h[n] = high[src];
+                l[n] = low[src];
+                c[n] = close[src];
+                v[n] = volume[src];
+                n++;
+            }
+            if (n < size) {
+                return new PriceSeries(Arrays.copyOf(t, n), Arrays.copyOf(o, n), Arrays.copyOf(h, n),
+                        Arrays.copyOf(l, n), Arrays.copyOf(c, n), Arrays.copyOf(v, n));
+            }
+            return new PriceSeries(t, o, h, l, c, v);
+        }
+    }
+}
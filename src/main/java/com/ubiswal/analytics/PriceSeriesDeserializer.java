@@ -0,0 +1,68 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+// Streams an alpha vantage "Time Series" object straight into the columns of a PriceSeries.
+class PriceSeriesDeserializer extends StdDeserializer<PriceSeries> {
+    private static final long serialVersionUID = 1L;
+    private static final int EXPECTED_BARS = 128;
+
+    PriceSeriesDeserializer() {
+        super(PriceSeries.class);
+    }
+
+    @Override
+    public PriceSeries deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+            return (PriceSeries) ctxt.handleUnexpectedToken(PriceSeries.class, p);
+        }
+        PriceSeries.Builder builder = new PriceSeries.Builder(EXPECTED_BARS);
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            long time;
+            try {
+                time = PriceSeries.parseTimestamp(p.getCurrentName());
+            } catch (RuntimeException e) {
+                return (PriceSeries) ctxt.handleWeirdKey(PriceSeries.class, p.getCurrentName(), "expected yyyy-MM-dd HH:mm:ss");
+            }
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return (PriceSeries) ctxt.handleUnexpectedToken(PriceSeries.class, p);
+            }
+            float open = 0, high = 0, low = 0, close = 0;
+            long volume = 0;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                p.nextToken();
+                switch (field) {
+                    case "1. open":
+                        open = parseFloat(p);
+                        break;
+                    case "2. high":
+                        high = parseFloat(p);
+                        break;
+                    case "3. low":
+                        low = parseFloat(p);
+                        break;
+                    case "4. close":
+                        close = parseFloat(p);
+                        break;
+                    case "5. volume":
+                        volume = p.getValueAsLong();
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            builder.add(time, open, high, low, close, volume);
+        }
+        return builder.build();
+    }
+
+    private static float parseFloat(JsonParser p) throws IOException {
+        return Float.parseFloat(p.getText().trim());
+    }
+}
@@ -0,0 +1,171 @@
+package com.ubiswal.analytics;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Best buy/sell searches over primitive price arrays. Every kernel is a single pass over the input.
+final class ProfitKernels {
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    static final class Trade {
+        static final Trade NONE = new Trade(-1, -1, 0);
+
+        @Getter
+        private final int buyIndex;
+        @Getter
+        private final int sellIndex;
+        @Getter
+        private final float profit;
+
+        Trade(int buyIndex, int sellIndex, float profit) {
+            this.buyIndex = buyIndex;
+            this.sellIndex = sellIndex;
+            this.profit = profit;
+        }
+
+        boolean isProfitable() {
+            return profit > 0;
+        }
+    }
+
+    // Streaming form of bestTrade for bars that arrive over time. Bars are identified by their time instead of an index.
+    static final class RunningTrade {
+        private float minPrice = Float.POSITIVE_INFINITY;
+        @Getter
+        private long minTime;
+        @Getter
+        private float profit;
+        @Getter
+        private long buyTime;
+        @Getter
+        private long sellTime;
+
+        RunningTrade copy() {
+            RunningTrade copy = new RunningTrade();
+            copy.minPrice = minPrice;
+            copy.minTime = minTime;
+            copy.profit = profit;
+            copy.buyTime = buyTime;
+            copy.sellTime = sellTime;
+            return copy;
+        }
+
+        void accept(long time, float price) {
+            float candidate = price - minPrice;
+            if (profit < candidate) {
+                profit = candidate;
+                buyTime = minTime;
+                sellTime = time;
+            }
+            if (price < minPrice) {
+                minPrice = price;
+                minTime = time;
+            }
+        }
+    }
+
+    private ProfitKernels() {
+    }
+
+    static Trade bestTrade(float[] prices) {
+        return bestTrade(prices, 0, prices.length);
+    }
+
+    // Single buy followed by a single sell within [from, to). Ties resolve to the earliest sell, then the earliest buy.
+    static Trade bestTrade(float[] prices, int from, int to) {
+        if (to - from < 2) {
+            return Trade.NONE;
+        }
+        int minIdx = from;
+        int buyIdx = -1;
+        int sellIdx = -1;
+        float maxProfit = 0;
+        for (int i = from + 1; i < to; i++) {
+            float profit = prices[i] - prices[minIdx];
+            if (maxProfit < profit) {
+                maxProfit = profit;
+                buyIdx = minIdx;
+                sellIdx = i;
+            }
+            if (prices[i] < prices[minIdx]) {
+                minIdx = i;
+            }
+        }
+        return buyIdx < 0 ? Trade.NONE : new Trade(buyIdx, sellIdx, maxProfit);
+    }
+
+    // Any number of non overlapping trades within [from, to): buy every valley, sell the following peak.
+    static List<Trade> bestTrades(float[] prices, int from, int to) {
+        List<Trade> trades = new ArrayList<>();
+        int i = from;
+        while (i < to - 1) {
+            while (i < to - 1 && prices[i + 1] <= prices[i]) {
+                i++;
+            }
+            int valley = i;
+            while (i < to - 1 && prices[i + 1] >= prices[i]) {
+                i++;
+            }
+            if (i > valley && prices[i] > prices[valley]) {
+                trades.add(new Trade(valley, i, prices[i] - prices[valley]));
+            }
+        }
+        return trades;
+    }
+
+    // Best total profit using at most maxTrades non overlapping trades, in O(n * maxTrades) time.
+    static float maxProfit(float[] prices, int from, int to, int maxTrades) {
+        if (maxTrades <= 0 || to - from < 2) {
+            return 0;
+        }
+        float[] holding = new float[maxTrades];
+        float[] sold = new float[maxTrades];
+        Arrays.fill(holding, Float.NEGATIVE_INFINITY);
+        for (int i = from; i < to; i++) {
+            float price = prices[i];
+            for (int k = maxTrades - 1; k >= 0; k--) {
+                sold[k] = Math.max(sold[k], holding[k] + price);
+                holding[k] = Math.max(holding[k], (k == 0 ? 0 : sold[k - 1]) - price);
+            }
+        }
+        return sold[maxTrades - 1];
+    }
+
+    // Indexes where a new trading day starts in a sorted array of wall clock epoch seconds, plus a trailing `size`.
+    static int[] sessionStarts(long[] epochSeconds, int size) {
+        int sessions = 0;
+        long currentDay = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long day = Math.floorDiv(epochSeconds[i], SECONDS_PER_DAY);
+            if (day != currentDay) {
+                sessions++;
+                currentDay = day;
+            }
+        }
+        int[] starts = new int[sessions + 1];
+        int s = 0;
+        currentDay = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long day = Math.floorDiv(epochSeconds[i], SECONDS_PER_DAY);
+            if (day != currentDay) {
+                starts[s++] = i;
+                currentDay = day;
+            }
+        }
+        starts[sessions] = size;
+        return starts;
+    }
+
+    // Best single trade inside each trading day, so that no trade is held overnight.
+    static Trade[] bestTradePerSession(float[] prices, long[] epochSeconds, int size) {
+        int[] starts = sessionStarts(epochSeconds, size);
+        Trade[] trades = new Trade[starts.length - 1];
+        for (int s = 0; s < trades.length; s++) {
+            trades[s] = bestTrade(prices, starts[s], starts[s + 1]);
+        }
+        return trades;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ubiswal.analytics;
+
+// Fixed size window over the latest values with running sums, so mean and standard deviation cost O(1) per value.
+final class RollingWindow {
+    private final double[] values;
+    private int next;
+    private int count;
+    private double sum;
+    private double sumOfSquares;
+
+    RollingWindow(int size) {
+        this.values = new double[size];
+    }
+
+    void accept(double value) {
+        if (count == values.length) {
+            double evicted = values[next];
+            sum -= evicted;
+            sumOfSquares -= evicted * evicted;
+        } else {
+            count++;
+        }
+        values[next] = value;
+        next = (next + 1) % values.length;
+        sum += value;
+        sumOfSquares += value * value;
+    }
+
+    boolean isFull() {
+        return count == values.length;
+    }
+
+    double mean() {
+        return sum / count;
+    }
+
+    // Population standard deviation. Clamped at 0 since the running sums can drift slightly below it.
+    double stdDev() {
+        double mean = mean();
+        return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+    }
+}
@@ -0,0 +1,12 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+class Source{
+    @Getter
+    @Setter
+    private String name;
+}
@@ -0,0 +1,17 @@
+package com.ubiswal.analytics;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.Getter;
+import lombok.Setter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+class StockPrices {
+    //private String symbol;
+    @Getter
+    @Setter
+    @JsonProperty("Time Series (5min)")
+    @JsonDeserialize(using = PriceSeriesDeserializer.class)
+    private PriceSeries series;
+}
@@ -0,0 +1,127 @@
+package com.ubiswal.analytics;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * What the last run derived for one symbol, along with the ETag of the stock.json it was derived from.
+ * When the next input only appends bars to the series seen last time, the new bars are folded into the
+ * existing values instead of scanning the whole series again. That holds as well when the crawler's window has
+ * dropped bars from the front, as long as the maximum and the best trade do not come from the dropped bars.
+ */
+final class StockState {
+    @Getter
+    private String inputETag;
+    @Getter
+    private long firstTime;
+    @Getter
+    private long lastTime;
+    @Getter
+    private float firstOpen;
+    @Getter
+    private float lastClose;
+    @Getter
+    private float maxHigh = Float.NEGATIVE_INFINITY;
+    private long maxHighTime; // latest bar with the maximum high
+    private float lastHigh; // what the last bar contributed to the folds, to notice when it is revised
+    private float lastPrice;
+    @Getter
+    private boolean fresh;
+    @Getter
+    private ProfitKernels.RunningTrade bestTrade = new ProfitKernels.RunningTrade();
+    @Getter
+    private long[] times = new long[0]; // time and close columns of the latest input, for the cross symbol stage
+    @Getter
+    private float[] closes = new float[0];
+    @Getter
+    @Setter
+    private Map<String, String> indicators = Collections.emptyMap(); // recomputed whenever the input changes
+
+    static StockState update(StockState previous, String inputETag, PriceSeries series, boolean fresh) {
+        int resumeFrom = previous == null ? -1 : previous.resumeIndex(series);
+        StockState state = resumeFrom < 0 ? new StockState() : previous.copy();
+        state.fold(series, Math.max(resumeFrom, 0));
+        state.firstTime = series.firstTime();
+        state.firstOpen = series.getOpen()[0];
+        state.inputETag = inputETag;
+        state.times = series.getTime();
+        state.closes = series.getClose();
+        state.fresh = fresh;
+        return state;
+    }
+
+    // The same state with another freshness, leaving this one as it is until the copy is committed.
+    StockState withFresh(boolean fresh) {
+        StockState state = copy();
+        state.inputETag = inputETag;
+        state.fresh = fresh;
+        return state;
+    }
+
+    /*
+     * Index of the first bar not seen yet, or -1 if the series does not simply extend the one seen last time.
+     * The latest bar is often still forming when it is first seen; as the maximum and the best trade cannot take
+     * back what a bar contributed, a revised latest bar means folding the whole series again.
+     *
+     * The series may start later than the one seen last time, as the crawler only keeps its latest bars. Folding
+     * the bars still in it gives the same values as long as the maximum high, the lowest price so far and the buy
+     * of the best trade are not among the dropped bars, which the times kept for them tell.
+     */
+    private int resumeIndex(PriceSeries series) {
+        if (series.isEmpty() || series.firstTime() < firstTime) {
+            return -1;
+        }
+        int last = Arrays.binarySearch(series.getTime(), 0, series.getSize(), lastTime);
+        if (last < 0 || series.getHigh()[last] != lastHigh || price(series, last) != lastPrice) {
+            return -1;
+        }
+        long start = series.firstTime();
+        if (start != firstTime && (maxHighTime < start || bestTrade.getMinTime() < start
+                || (bestTrade.getProfit() > 0 && bestTrade.getBuyTime() < start))) {
+            return -1;
+        }
+        return last + 1;
+    }
+
+    private static float price(PriceSeries series, int i) {
+        return (series.getOpen()[i] + series.getClose()[i] + series.getHigh()[i] + series.getLow()[i]) / 4;
+    }
+
+    private void fold(PriceSeries series, int from) {
+        float[] high = series.getHigh();
+        long[] time = series.getTime();
+        for (int i = from; i < series.getSize(); i++) {
+            if (high[i] >= maxHigh) {
+                maxHighTime = time[i];
+            }
+            maxHigh = Math.max(maxHigh, high[i]);
+            bestTrade.accept(time[i], price(series, i));
+        }
+        int last = series.getSize() - 1;
+        lastTime = time[last];
+        lastClose = series.getClose()[last];
+        lastHigh = high[last];
+        lastPrice = price(series, last);
+    }
+
+    private StockState copy() {
+        StockState copy = new StockState();
+        copy.firstTime = firstTime;
+        copy.lastTime = lastTime;
+        copy.firstOpen = firstOpen;
+        copy.lastClose = lastClose;
+        copy.maxHigh = maxHigh;
+        copy.maxHighTime = maxHighTime;
+        copy.lastHigh = lastHigh;
+        copy.lastPrice = lastPrice;
+        copy.bestTrade = bestTrade.copy();
+        copy.times = times;
+        copy.closes = closes;
+        copy.indicators = indicators;
+        return copy;
+    }
+}
@@ -1,217 +1,343 @@
 package com.ubiswal.analytics;
 
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.SdkClientException;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
-import com.amazonaws.services.dynamodbv2.model.PutItemResult;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.*;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Getter;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.Setter;
-import org.apache.commons.io.FileUtils;
 import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.resilience.CircuitOpenException;
+import com.ubiswal.storage.AlertSink;
+import com.ubiswal.storage.AnalyticsSink;
+import com.ubiswal.storage.ImageSink;
+import com.ubiswal.storage.InputSource;
+import com.ubiswal.storage.JsonObjects;
 import org.apache.http.HttpException;
-import org.knowm.xchart.BitmapEncoder;
-import org.knowm.xchart.VectorGraphicsEncoder;
-import org.knowm.xchart.XYChart;
-import org.knowm.xchart.XYSeries;
-
-import java.awt.*;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.List;
-
-@JsonIgnoreProperties(ignoreUnknown = true)
-class TimeSeriesEntry {
-    @Getter
-    @Setter
-    @JsonProperty("1. open")
-    private float open;
-    @Getter
-    @Setter
-    @JsonProperty("2. high")
-    private float high;
-    @Getter
-    @Setter
-    @JsonProperty("3. low")
-    private float low;
-    @Getter
-    @Setter
-    @JsonProperty("4. close")
-    private float close;
-    @Getter
-    @Setter
-    @JsonProperty("5. volume")
-    private int volume;
-
-}
-
-@JsonIgnoreProperties(ignoreUnknown = true)
-class StockPrices {
-    //private String symbol;
-    @Getter
-    @Setter
-    @JsonProperty("Time Series (5min)")
-    private Map<String, TimeSeriesEntry> timeSeriesEntries;
-}
+import java.util.concurrent.CompletableFuture;
 
 public class StocksAnalyzer extends AbstractAnalyzer {
-    private AmazonS3 s3Client;
-    private AmazonDynamoDB dynamoDBClient;
-    private List<String> stockSymbols;
-    private String bucketName;
+    private ImageSink imageSink;
+    private ChartRenderer chartRenderer;
+    private IndicatorEngine indicatorEngine;
+    private AlertEngine alertEngine;
+    private AlertSink alertSink;
+    private CrossSection crossSection;
+    private HistoryStore history;
+    private int historyDays;
+    private AnalysisState analysisState;
+    @Setter
+    private volatile List<String> stockSymbols; // replaced between runs when the configured symbols change
     private Logger log = Logger.get(this.getClass());
-    private static final String S3_BUCKET_NAME = "ubiswal-website-contents";
-
-    public StocksAnalyzer(AmazonS3 s3Client, AmazonDynamoDB dynamoDBClient, List<String> stockSymbols, String bucketName) {
-        super(s3Client, bucketName);
-        this.s3Client = s3Client;
-        this.dynamoDBClient = dynamoDBClient;
+    private static final ObjectReader STOCK_PRICES_READER = JsonObjects.readerFor(StockPrices.class);
+
+    public StocksAnalyzer(InputSource inputSource, PartitionDiscovery partitions, AnalyticsSink analyticsSink, ImageSink imageSink, ChartRenderer chartRenderer, IndicatorEngine indicatorEngine, AlertEngine alertEngine, AlertSink alertSink, CrossSection crossSection, HistoryStore history, int historyDays, AnalysisState analysisState, List<String> stockSymbols, String analysisDate, int poolSize) {
+        super(inputSource, partitions, analyticsSink, analysisDate, poolSize);
+        this.imageSink = imageSink;
+        this.chartRenderer = chartRenderer;
+        this.indicatorEngine = indicatorEngine;
+        this.alertEngine = alertEngine;
+        this.alertSink = alertSink;
+        this.crossSection = crossSection;
+        this.history = history;
+        this.historyDays = historyDays;
+        this.analysisState = analysisState;
         this.stockSymbols = stockSymbols;
-        this.bucketName = bucketName;
     }
 
     private boolean validateStockPricesForSymbol(StockPrices obj) {
-        if (obj.getTimeSeriesEntries() == null) {
+        if (obj.getSeries() == null || obj.getSeries().isEmpty()) {
             return false;
         } else {
             return true;
         }
     }
 
-    private StockPrices convertS3JsonToClass(String symbol, String currentDate, String hour) throws IOException {
-        S3Object s3obj = s3Client.getObject(bucketName, String.format("%s/%s/%s/stock.json", currentDate, hour, symbol));
-        S3ObjectInputStream inputStream = s3obj.getObjectContent();
-        FileUtils.copyInputStreamToFile(inputStream, new File("stock.json"));
+    // Returns null if stock.json still has the ETag seen in the last run.
+    private JsonObjects.Versioned<StockPrices> convertS3JsonToClass(String symbol, String currentDate, String hour, String lastETag) throws IOException {
+        return readInput(stockKey(symbol, currentDate, hour), lastETag, STOCK_PRICES_READER, PayloadCodecs.STOCK_PRICES);
+    }
 
-        //use jackson for json to class conversion
-        ObjectMapper mapper = new ObjectMapper();
-        // JSON file to Java object
-        StockPrices stockPriceObj = mapper.readValue(new File("stock.json"), StockPrices.class);
-        return stockPriceObj;
+    private static String stockKey(String symbol, String currentDate, String hour) {
+        return String.format("%s/%s/%s/stock.json", currentDate, hour, symbol);
     }
 
 
     //convert all stocks json to Objects
     @Override
     public void runAnalyzer() {
-        String analysisHour = Integer.toString(findLatestHourInBucket());
+        String analysisDate = analysisDate();
+        String analysisHour = Integer.toString(findLatestHourInBucket(analysisDate));
         if (analysisHour.equals("-1")){
             log.warning(String.format("Did not find any directory with current date %s", analysisDate));
             return;
         } else {
             log.info(String.format("Getting all data for %s -- %s hours", analysisDate, analysisHour));
         }
-        for (String symbol : stockSymbols) {
-            try {
-                log.info(String.format("Running stocks analyzer for symbol %s",symbol));
-                StockPrices stockObj = convertS3JsonToClass(symbol, analysisDate, analysisHour);
-                if(stockObj == null || stockObj.getTimeSeriesEntries() == null) {
-                    log.error(String.format("Failed to fetch stock data for %s. You may be out of call quota. Please check the crawler.", symbol));
-                    continue;
-                }
-                boolean freshness = isDataFresh(symbol, stockObj);
+        List<String> symbols = stockSymbols;
+        analyzeAll(symbols, analysisDate, analysisHour);
+        publishCrossSection(symbols);
+    }
 
-                if(!validateStockPricesForSymbol(stockObj)) {
-                    log.warning(String.format("Failed to generate data for symbol %s", symbol));
-                    // TODO: Add code to delete any entries for this symbol in dynamo DB
-                    continue;
-                }
-                calcMaxPrice(symbol, stockObj, freshness);
-                bestTimeForProfitSell(symbol, stockObj, freshness);
-                generateGraphsStockPrices(symbol, stockObj);
-                diffInStockPrice(symbol, stockObj, freshness);
-            } catch (IOException | SdkClientException | HttpException e) {
-                e.printStackTrace();
+    // Symbols skipped as unchanged still take part, with the series kept from their last run. The results belong to
+    // no symbol's unit, so they are written even for a symbol whose own results were just dropped.
+    private void publishCrossSection(List<String> symbols) {
+        if (!crossSection.isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Map<String, String>> results;
+        results = Metrics.time("cross_section", () -> crossSection.compute(symbols, analysisState));
+        for (Map.Entry<String, Map<String, String>> symbolResults : results.entrySet()) {
+            String symbol = symbolResults.getKey();
+            String status = analysisState.getStock(symbol).isFresh()? "fresh" : "stale";
+            for (Map.Entry<String, String> result : symbolResults.getValue().entrySet()) {
+                analyticsSink.putDirect(analyticItem(result.getKey(), result.getValue(), symbol, status));
             }
         }
+        log.info(String.format("Ranked and correlated %d symbols in %d ms", results.size(), System.currentTimeMillis() - start));
     }
 
-    public boolean isDataFresh(String stockSymbol, StockPrices stockObj) {
-        TreeMap<String, TimeSeriesEntry> sortedEntries = new TreeMap<>(stockObj.getTimeSeriesEntries());
-        if(sortedEntries.size() > 0) {
-            String greatestTimeStamp = sortedEntries.lastEntry().getKey();
-            try {
-                Calendar calendar = GregorianCalendar.getInstance();
-                Date providedDate = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss").parse(greatestTimeStamp);
-                calendar.setTime(providedDate);
-                int providedDay = calendar.get(Calendar.DAY_OF_MONTH);
-
-                Date currentDate = new Date();
-                calendar.setTime(currentDate);
-                int currentDay = calendar.get(Calendar.DAY_OF_MONTH);
-
-                if (providedDay < currentDay-1) {
-                    log.warning(String.format("Data for %s is stale", stockSymbol));
-                    return false;
-                } else {
-                    log.info(String.format("Data for %s is fresh", stockSymbol));
-                    return true;
-                }
-            } catch (ParseException e) {
-                log.error(e, String.format("Could not parse date provided by alpha vantage (%s). Expected format was yyyy-MM-dd hh:mm:ss. Will assume data as fresh"));
+    @Override
+    protected boolean analyzeSymbol(String symbol, String currentDate, String hour) {
+        try {
+            log.info(String.format("Running stocks analyzer for symbol %s",symbol));
+            StockState previous = analysisState.getStock(symbol);
+            JsonObjects.Versioned<StockPrices> input = convertS3JsonToClass(symbol, currentDate, hour, previous == null ? null : previous.getInputETag());
+            if (input == null) {
+                log.info(String.format("Stock data for %s has not changed since the last run. Skipping.", symbol));
+                refreshFreshness(symbol, previous);
                 return true;
             }
+            Analyzed analyzed = analyze(symbol, previous, input);
+            if (analyzed != null) {
+                uploadImages(symbol, renderCharts(analyzed), analyzed.charts);
+                analyticsSink.onCommit(symbol, () -> analysisState.putStock(symbol, analyzed.state));
+            }
+            return true;
+        } catch (IOException | SdkClientException | HttpException e) {
+            recordFailure(symbol, e);
+            return false;
         }
-        return true;
     }
 
-    private void calcMaxPrice(String symbol, StockPrices stockObj, boolean fresh){
-        log.info(String.format("About to calculate max price for Stock Symbol = %s",symbol));
-        List <Float> highPricesList = new ArrayList<>();
-        for (Map.Entry<String, TimeSeriesEntry> entry: stockObj.getTimeSeriesEntries().entrySet()) {
-            highPricesList.add(entry.getValue().getHigh());
+    // The same steps as analyzeSymbol, with the download, parsing, analytics, rendering and uploads on their own stages.
+    @Override
+    protected CompletableFuture<?> pipelineSymbol(Pipeline.Run run, String symbol, String currentDate, String hour) {
+        StockState previous = analysisState.getStock(symbol);
+        CompletableFuture<JsonObjects.Versioned<byte[]>> body = run.start(Pipeline.FETCH, () -> {
+            log.info(String.format("Running stocks analyzer for symbol %s",symbol));
+            JsonObjects.Versioned<byte[]> fetched = fetchInput(stockKey(symbol, currentDate, hour), previous == null ? null : previous.getInputETag());
+            if (fetched == null) {
+                log.info(String.format("Stock data for %s has not changed since the last run. Skipping.", symbol));
+                refreshFreshness(symbol, previous);
+            }
+            return fetched;
+        });
+        CompletableFuture<JsonObjects.Versioned<StockPrices>> input = run.then(body, Pipeline.DECODE, fetched -> parseInput(stockKey(symbol, currentDate, hour), fetched, STOCK_PRICES_READER, PayloadCodecs.STOCK_PRICES));
+        CompletableFuture<Analyzed> analyzed = run.then(input, Pipeline.ANALYZE, parsed -> analyze(symbol, previous, parsed));
+        CompletableFuture<Analyzed> rendered = run.then(analyzed, Pipeline.RENDER, result -> {
+            result.images = renderCharts(result);
+            return result;
+        });
+        return run.then(rendered, Pipeline.UPLOAD, result -> {
+            uploadImages(symbol, result.images, result.charts);
+            analyticsSink.onCommit(symbol, () -> analysisState.putStock(symbol, result.state));
+            return result;
+        });
+    }
+
+    // What the analytics of one symbol hand on to rendering and uploading.
+    private static final class Analyzed {
+        final StockState state;
+        final PriceSeries series;
+        final Map<ChartStyle, Long> charts; // content hash of every chart that differs from the one uploaded last
+        Map<ChartStyle, byte[]> images;
+
+        Analyzed(StockState state, PriceSeries series, Map<ChartStyle, Long> charts) {
+            this.state = state;
+            this.series = series;
+            this.charts = charts;
         }
-        Float maxPrice = Collections.max(highPricesList);
-        saveStockAnalyticToDynamo("1_maxprice", Float.toString(maxPrice), symbol, fresh? "fresh" : "stale");
     }
 
-    private void bestTimeForProfitSell(String symbol, StockPrices stockObj, boolean fresh){
-        class TimeAndPriceOfStock{
-            public String timestamp;
-            public float stockValue;
-            TimeAndPriceOfStock(String timestamp, float stockValue){
-                this.timestamp = timestamp;
-                this.stockValue = stockValue;
-            }
+    // Computes and queues every per symbol analytic of a changed input. Returns null if the input is unusable.
+    private Analyzed analyze(String symbol, StockState previous, JsonObjects.Versioned<StockPrices> input) {
+        StockPrices stockObj = input.getValue();
+        if(stockObj == null || stockObj.getSeries() == null) {
+            log.error(String.format("Failed to fetch stock data for %s. You may be out of call quota. Please check the crawler.", symbol));
+            return null;
+        }
+        boolean freshness = isDataFresh(symbol, stockObj);
+
+        if(!validateStockPricesForSymbol(stockObj)) {
+            log.warning(String.format("Failed to generate data for symbol %s", symbol));
+            // the analytics of the last good series are stale now, the news stay. Without a state the symbol is
+            // also left out of the cross section.
+            analyticsSink.delete(symbol, type -> !NewsAnalyzer.isArticleType(type));
+            analyticsSink.onCommit(symbol, () -> analysisState.removeStock(symbol));
+            return null;
         }
+        StockState state = Metrics.time("fold", () -> StockState.update(previous, input.getETag(), stockObj.getSeries(), freshness));
+        Metrics.time("max_price", () -> calcMaxPrice(symbol, state));
+        Metrics.time("best_profit", () -> bestTimeForProfitSell(symbol, state));
+        Metrics.time("diff", () -> diffInStockPrice(symbol, state));
+        PriceSeries longSeries = Metrics.time("history", () -> {
+            PriceSeries series = recordHistory(symbol, stockObj.getSeries());
+            historyRange(symbol, state, series);
+            return series;
+        });
+        Metrics.time("indicators", () -> calcIndicators(symbol, state, longSeries));
+        if (alertEngine.isEnabled()) {
+            Metrics.time("alerts", () -> raiseAlerts(symbol, longSeries));
+        }
+        return new Analyzed(state, stockObj.getSeries(), changedCharts(symbol, stockObj.getSeries()));
+    }
 
-        TreeMap<String, TimeSeriesEntry> sortedEntries = new TreeMap<>(stockObj.getTimeSeriesEntries());
-        List<TimeAndPriceOfStock> averageStockPrice = new ArrayList<>();
-        for (Map.Entry<String, TimeSeriesEntry> entry: sortedEntries.entrySet()) {
-            float averageStockPricePerInterval = (entry.getValue().getOpen() + entry.getValue().getClose() +entry.getValue().getHigh() + entry.getValue().getLow())/4;
-            averageStockPrice.add(new TimeAndPriceOfStock(entry.getKey(), averageStockPricePerInterval));
+    /*
+     * Only bars newer than the ones evaluated before are alerted on, evaluated over the history window so the
+     * features can look back across days. How far alerts got is kept in the history, so neither a restart nor a
+     * symbol dropping out for a bad input alerts the same bars twice. The alerts go out when the symbol commits.
+     */
+    private void raiseAlerts(String symbol, PriceSeries series) {
+        if (series.isEmpty()) {
+            return;
         }
-        float maxProfit = 0;
-        String maxBuyIdx = "";
-        String maxSellIdx = "";
-        for (int i = 1; i < averageStockPrice.size(); i++){
-            for (int j = 0; j < i; j++ ){
-                if (maxProfit < averageStockPrice.get(i).stockValue-averageStockPrice.get(j).stockValue){
-                    maxProfit = averageStockPrice.get(i).stockValue-averageStockPrice.get(j).stockValue;
-                    maxBuyIdx = averageStockPrice.get(j).timestamp;
-                    maxSellIdx = averageStockPrice.get(i).timestamp;
+        long after = alertedUntil(symbol);
+        List<Map<String, String>> alerts = alertEngine.evaluate(symbol, series, after);
+        long until = Math.max(after, series.lastTime());
+        if (!alerts.isEmpty()) {
+            log.info(String.format("%d alerts for %s", alerts.size(), symbol));
+        }
+        // a replay of older bars must not replace the latest alert of a rule
+        List<Map<String, String>> raised = analyticsSink.publishes(symbol) || alertSink.keepsHistory() ? alerts : Collections.emptyList();
+        analyticsSink.onCommit(symbol, () -> {
+            for (Map<String, String> alert : raised) {
+                alertSink.put(alert);
+                Metrics.counter("analytics_alerts_total", "metric", alert.get("metric")).inc();
+            }
+            analysisState.putAlertedUntil(symbol, until);
+            if (history != null) {
+                try {
+                    history.putAlertedUntil(symbol, until);
+                } catch (IOException e) {
+                    log.warning(String.format("Failed to record how far the alerts of %s got: %s", symbol, e.getMessage()));
                 }
             }
+        });
+    }
+
+    private long alertedUntil(String symbol) {
+        Long until = analysisState.getAlertedUntil(symbol);
+        if (until != null || history == null) {
+            return until == null ? Long.MIN_VALUE : until;
+        }
+        try {
+            return history.alertedUntil(symbol);
+        } catch (IOException | NumberFormatException e) {
+            log.warning(String.format("Failed to read how far the alerts of %s got: %s", symbol, e.getMessage()));
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /*
+     * A chart only depends on the highs and its style, so it is addressed by a hash of both. Styles whose hash
+     * matches the chart uploaded last, e.g. after the market closed, are neither rendered nor uploaded again. Neither
+     * are any while the symbol's items are not published.
+     */
+    private Map<ChartStyle, Long> changedCharts(String symbol, PriceSeries series) {
+        if (!analyticsSink.publishes(symbol)) {
+            return Collections.emptyMap();
+        }
+        float[] highs = series.getHigh();
+        long seriesHash = 0xcbf29ce484222325L;
+        for (int i = 0; i < series.getSize(); i++) {
+            seriesHash = (seriesHash ^ Float.floatToIntBits(highs[i])) * 0x100000001b3L;
+        }
+        Map<ChartStyle, Long> changed = new EnumMap<>(ChartStyle.class);
+        for (ChartStyle style : ChartStyle.values()) {
+            long hash = (seriesHash ^ style.ordinal()) * 0x100000001b3L;
+            if (Long.valueOf(hash).equals(analysisState.getChartHash(symbol, style))) {
+                Metrics.counter("analytics_unchanged_charts_total").inc();
+            } else {
+                changed.put(style, hash);
+            }
+        }
+        return changed;
+    }
+
+    // While rendering is failing the charts are left as they are. Their hashes are not recorded, so the next run renders them.
+    private Map<ChartStyle, byte[]> renderCharts(Analyzed analyzed) throws IOException {
+        if (analyzed.charts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            return chartRenderer.render(analyzed.series.getHigh(), analyzed.charts.keySet());
+        } catch (CircuitOpenException e) {
+            Metrics.counter("analytics_skipped_charts_total").add(analyzed.charts.size());
+            return Collections.emptyMap();
+        }
+    }
+
+    // Unchanged data can still turn stale as time passes, in which case the published status has to follow. The new
+    // state is only swapped in when the symbol commits, so if its writes are dropped the next run republishes them.
+    private void refreshFreshness(String symbol, StockState previous) {
+        boolean freshness = isDataFresh(symbol, previous.getLastTime());
+        if (freshness != previous.isFresh()) {
+            StockState state = previous.withFresh(freshness);
+            calcMaxPrice(symbol, state);
+            bestTimeForProfitSell(symbol, state);
+            diffInStockPrice(symbol, state);
+            saveIndicators(symbol, state);
+            analyticsSink.onCommit(symbol, () -> analysisState.putStock(symbol, state));
+        }
+    }
+
+    public boolean isDataFresh(String stockSymbol, StockPrices stockObj) {
+        PriceSeries series = stockObj.getSeries();
+        if(series.getSize() > 0) {
+            return isDataFresh(stockSymbol, series.lastTime());
+        }
+        return true;
+    }
+
+    private boolean isDataFresh(String stockSymbol, long lastTime) {
+        int providedDay = LocalDateTime.ofEpochSecond(lastTime, 0, ZoneOffset.UTC).getDayOfMonth();
+        int currentDay = LocalDate.now().getDayOfMonth();
+
+        if (providedDay < currentDay-1) {
+            log.warning(String.format("Data for %s is stale", stockSymbol));
+            Metrics.counter("analytics_stale_data_total").inc();
+            Metrics.countSymbol("staleSymbols", stockSymbol);
+            return false;
+        } else {
+            log.info(String.format("Data for %s is fresh", stockSymbol));
+            return true;
         }
+    }
+
+    private void calcMaxPrice(String symbol, StockState state){
+        log.info(String.format("About to calculate max price for Stock Symbol = %s",symbol));
+        float maxPrice = state.getMaxHigh();
+        saveStockAnalyticToDynamo("1_maxprice", Float.toString(maxPrice), symbol, state.isFresh()? "fresh" : "stale");
+    }
+
+    private void bestTimeForProfitSell(String symbol, StockState state){
+        ProfitKernels.RunningTrade trade = state.getBestTrade();
+        float maxProfit = trade.getProfit();
         if (maxProfit > 0) {
-            String result = String.format("%s;%s;%s", maxProfit, maxBuyIdx, maxSellIdx);
-            saveStockAnalyticToDynamo("2_bestProfit", result, symbol, fresh? "fresh" : "stale");
+            String result = String.format("%s;%s;%s", maxProfit, PriceSeries.formatTimestamp(trade.getBuyTime()), PriceSeries.formatTimestamp(trade.getSellTime()));
+            saveStockAnalyticToDynamo("2_bestProfit", result, symbol, state.isFresh()? "fresh" : "stale");
             log.info(result);
         }
         else{
             String result = "0:-1:-1";
-            saveStockAnalyticToDynamo("2_bestProfit", result, symbol, fresh? "fresh" : "stale");
+            saveStockAnalyticToDynamo("2_bestProfit", result, symbol, state.isFresh()? "fresh" : "stale");
             log.info(result);
         }
 
@@ -219,103 +345,87 @@ public class StocksAnalyzer extends AbstractAnalyzer {
     }
 
     private void saveStockAnalyticToDynamo(String analyticType, String analyticValue, String symbol, String status){
-        PutItemRequest request = new PutItemRequest();
-        request.setTableName("Analytics-testing");
-
-        Map<String, AttributeValue> map = new HashMap<>();
-        map.put("symb", new AttributeValue().withS(symbol));
-        map.put("type", new AttributeValue().withS(analyticType));
-        map.put("value", new AttributeValue().withS(analyticValue));
-        map.put("status", new AttributeValue().withS(status));
-        request.setItem(map);
-        try {
-            PutItemResult result = dynamoDBClient.putItem(request);
-        } catch (AmazonServiceException e) {
-            log.error(e.getErrorMessage());
-        }
+        analyticsSink.put(analyticItem(analyticType, analyticValue, symbol, status));
+    }
 
+    private static Map<String, String> analyticItem(String analyticType, String analyticValue, String symbol, String status) {
+        Map<String, String> map = new HashMap<>();
+        map.put("symb", symbol);
+        map.put("type", analyticType);
+        map.put("value", analyticValue);
+        map.put("status", status);
+        return map;
     }
 
-    private void uploadToS3(String s3KeyName, String localFileName) throws HttpException {
+    private void uploadImage(String keyName, byte[] image) throws HttpException {
         try {
-            FileInputStream stream = new FileInputStream(localFileName);
-            PutObjectRequest request = new PutObjectRequest(S3_BUCKET_NAME, s3KeyName, stream, null).withCannedAcl(CannedAccessControlList.PublicRead);
-            s3Client.putObject(request);
-        } catch (SdkClientException | FileNotFoundException e) {
-            throw new HttpException("Failed to upload to s3 because " + e.getMessage());
+            Metrics.time("upload", () -> imageSink.put(keyName, image, "image/jpeg"));
+        } catch (SdkClientException | IOException e) {
+            throw new HttpException("Failed to upload image because " + e.getMessage());
         }
     }
 
-    private void diffInStockPrice(String symbol, StockPrices stockObj, boolean fresh) {
+    private void diffInStockPrice(String symbol, StockState state) {
         log.info(String.format("Checking the diff in stock prices for %s", symbol));
-        TreeMap<String, TimeSeriesEntry> sortedEntries = new TreeMap<>(stockObj.getTimeSeriesEntries());
-        float start = sortedEntries.firstEntry().getValue().getOpen();
-        float end = sortedEntries.lastEntry().getValue().getClose();
-        saveStockAnalyticToDynamo("3_diff", Float.toString(end-start), symbol, fresh? "fresh" : "stale");
+        float start = state.getFirstOpen();
+        float end = state.getLastClose();
+        saveStockAnalyticToDynamo("3_diff", Float.toString(end-start), symbol, state.isFresh()? "fresh" : "stale");
     }
 
-    private void generateGraphsStockPrices(String symbol, StockPrices stockObj) throws IOException, HttpException {
-        TreeMap<String, TimeSeriesEntry> sortedEntries = new TreeMap<>(stockObj.getTimeSeriesEntries());
-        List<Float> prices = new ArrayList<>();
-        for (Map.Entry<String, TimeSeriesEntry> ts : sortedEntries.entrySet()) {
-            prices.add(ts.getValue().getHigh());
+    // Adds the new bars to the history and returns the last historyDays of it, or just the input without a history.
+    private PriceSeries recordHistory(String symbol, PriceSeries series) {
+        if (history == null) {
+            return series;
         }
+        try {
+            int stored = history.append(symbol, series);
+            log.info(String.format("Stored %d new bars in the history of %s", stored, symbol));
+            long to = series.lastTime() + 1;
+            return history.range(symbol, to - historyDays * 24L * 60 * 60, to);
+        } catch (IOException e) {
+            log.error(e, String.format("Failed to use the history of %s. Falling back to the latest input only.", symbol));
+            return series;
+        }
+    }
 
-        XYChart chart1; //smaller size graph
-        XYChart chart2; //larger size graph
-
-        chart1 = new XYChart(300, 300);
-        chart2 = new XYChart(800, 300);
-
-        XYSeries series1 = chart1.addSeries(String.format("Stock prices for %s", symbol), null, prices);
-        chart1.getStyler().setMarkerSize(0);
-        chart1.getStyler().setLegendVisible(false);
-        chart1.getStyler().setPlotGridLinesVisible(false);
-        chart1.getStyler().setPlotBorderVisible(false);
-        chart1.getStyler().setXAxisTicksVisible(false);
-
-        XYSeries series2 = chart2.addSeries(String.format("Stock prices for %s", symbol), null, prices);
-        chart2.getStyler().setMarkerSize(0);
-        chart2.getStyler().setLegendVisible(false);
-        chart2.getStyler().setPlotGridLinesVisible(false);
-        chart2.getStyler().setPlotBorderVisible(false);
-        chart2.getStyler().setXAxisTicksVisible(false);
-
-        // Dark graph
-        //Dark and smaller size graph
-        chart1.getStyler().setChartBackgroundColor(new Color(0x28, 0x28, 0x28));
-        series1.setFillColor(new Color(28, 28, 28));
-        series1.setLineColor(new Color(0x2E, 0xA2, 0x31));
-        chart1.getStyler().setPlotBackgroundColor(new Color(0x28, 0x28, 0x28));
-        chart1.getStyler().setAxisTickLabelsColor(new Color(0x2E, 0xA2, 0x31));
-
-        BitmapEncoder.saveBitmap(chart1, String.format("./%s_dark_small.jpg", symbol), BitmapEncoder.BitmapFormat.JPG);
-        String s3KeyNameDarkSmall = String.format("%s_dark_small.jpg", symbol);
-        uploadToS3(s3KeyNameDarkSmall, String.format("%s_dark_small.jpg", symbol));
-
-        //Dark and larger size graph
-        chart2.getStyler().setChartBackgroundColor(new Color(0x28, 0x28, 0x28));
-        series2.setFillColor(new Color(28, 28, 28));
-        series2.setLineColor(new Color(0x2E, 0xA2, 0x31));
-        chart2.getStyler().setPlotBackgroundColor(new Color(0x28, 0x28, 0x28));
-        chart2.getStyler().setAxisTickLabelsColor(new Color(0x2E, 0xA2, 0x31));
-
-        BitmapEncoder.saveBitmap(chart2, String.format("./%s_dark_large.jpg", symbol), BitmapEncoder.BitmapFormat.JPG);
-        String s3KeyNameDarkLarge = String.format("%s_dark_large.jpg", symbol);
-        uploadToS3(s3KeyNameDarkLarge, String.format("%s_dark_large.jpg", symbol));
-
-        // Light graph
-        chart1.getStyler().setChartBackgroundColor(new Color(0xFF, 0xFF, 0xFF));
-        series1.setFillColor(new Color(0xFF, 0xFF, 0xFF));
-        series1.setLineColor(new Color(0xFF, 0, 0));
-        chart1.getStyler().setPlotBackgroundColor(new Color(0xFF, 0xFF, 0xFF));
-        chart1.getStyler().setAxisTickLabelsColor(new Color(0xFF, 0, 0));
-
-        BitmapEncoder.saveBitmap(chart1, String.format("./%s_light.jpg", symbol), BitmapEncoder.BitmapFormat.JPG);
-        String s3KeyNameLight = String.format("%s_light.jpg", symbol);
-        uploadToS3(s3KeyNameLight, String.format("%s_light.jpg", symbol));
+    // Low, high and percent change over the whole history window, as "days;low;high;pct".
+    private void historyRange(String symbol, StockState state, PriceSeries series) {
+        if (history == null || series.isEmpty()) {
+            return;
+        }
+        float low = Float.POSITIVE_INFINITY;
+        float[] lows = series.getLow();
+        for (int i = 0; i < series.getSize(); i++) {
+            low = Math.min(low, lows[i]);
+        }
+        float first = series.getOpen()[0];
+        float change = first > 0 ? (series.getClose()[series.getSize() - 1] - first) / first * 100 : 0;
+        long days = (series.lastTime() - series.firstTime()) / (24 * 60 * 60) + 1;
+        String result = String.format("%d;%s;%s;%s", days, low, series.maxHigh(), change);
+        saveStockAnalyticToDynamo("8_history", result, symbol, state.isFresh()? "fresh" : "stale");
+    }
 
+    private void calcIndicators(String symbol, StockState state, PriceSeries series) {
+        if (!indicatorEngine.isEnabled()) {
+            return;
+        }
+        log.info(String.format("Calculating indicators for %s", symbol));
+        state.setIndicators(indicatorEngine.compute(series));
+        saveIndicators(symbol, state);
+    }
 
+    private void saveIndicators(String symbol, StockState state) {
+        for (Map.Entry<String, String> indicator : state.getIndicators().entrySet()) {
+            saveStockAnalyticToDynamo(indicator.getKey(), indicator.getValue(), symbol, state.isFresh()? "fresh" : "stale");
+        }
+    }
+
+    // Uploads the rendered charts and remembers their hashes once they are stored.
+    private void uploadImages(String symbol, Map<ChartStyle, byte[]> images, Map<ChartStyle, Long> hashes) throws HttpException {
+        for (Map.Entry<ChartStyle, byte[]> image : images.entrySet()) {
+            uploadImage(image.getKey().keyFor(symbol), image.getValue());
+            analysisState.putChartHash(symbol, image.getKey(), hashes.get(image.getKey()));
+        }
     }
 }
 
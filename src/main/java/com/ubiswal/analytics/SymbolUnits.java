@@ -0,0 +1,147 @@
+package com.ubiswal.analytics;
+
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.storage.AnalyticsSink;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/*
+ * The analytics sink of an analyzer, making each symbol's results a unit. Between begin and commit the puts, deletes
+ * and analysis state updates of the symbol are held back and then applied in order, so a symbol that fails or runs
+ * out of time half way is aborted and keeps the items of its last good run instead of a mix of old and new ones.
+ * Its state is not updated either, so the next run analyzes it again.
+ *
+ * Items of symbols without an open unit go straight through, as do the ones put with putDirect, e.g. the cross
+ * section computed once every symbol is done. An aborted unit stays closed until its symbol begins again, or until
+ * the symbol is no longer analyzed.
+ *
+ * A unit begun without publishing, e.g. a backfill replaying a partition older than the published items, drops its
+ * puts and deletes and only keeps the state updates.
+ */
+final class SymbolUnits implements AnalyticsSink {
+    private static final class Unit {
+        final List<Runnable> actions = new ArrayList<>();
+        final boolean publish;
+        boolean closed;
+
+        Unit(boolean publish) {
+            this.publish = publish;
+        }
+    }
+
+    private final AnalyticsSink sink;
+    private final String analyzer;
+    private final ConcurrentMap<String, Unit> units = new ConcurrentHashMap<>();
+    private Logger log = Logger.get(this.getClass());
+
+    SymbolUnits(AnalyticsSink sink, String analyzer) {
+        this.sink = sink;
+        this.analyzer = analyzer;
+    }
+
+    void begin(String symbol, boolean publish) {
+        units.put(symbol, new Unit(publish));
+    }
+
+    // False while the symbol's open unit drops its items.
+    boolean publishes(String symbol) {
+        Unit unit = units.get(symbol);
+        return unit == null || unit.publish;
+    }
+
+    // Applies everything held back for the symbol. A failing action is logged and does not stop the others.
+    void commit(String symbol) {
+        Unit unit = units.remove(symbol);
+        if (unit == null) {
+            return;
+        }
+        List<Runnable> actions;
+        synchronized (unit) {
+            if (unit.closed) {
+                return;
+            }
+            unit.closed = true;
+            actions = unit.actions;
+        }
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.error(e, String.format("Failed to commit the results of symbol %s", symbol));
+            }
+        }
+    }
+
+    // Drops everything held back for the symbol. The unit stays closed, so anything a late step still adds is dropped too.
+    void abort(String symbol) {
+        Unit unit = units.get(symbol);
+        if (unit == null) {
+            return;
+        }
+        int dropped;
+        synchronized (unit) {
+            unit.closed = true;
+            dropped = unit.actions.size();
+            unit.actions.clear();
+        }
+        Metrics.counter("analytics_aborted_updates_total", "analyzer", analyzer).add(dropped);
+    }
+
+    // Runs the action when the symbol commits, or now if it has no open unit.
+    void onCommit(String symbol, Runnable action) {
+        Unit unit = units.get(symbol);
+        if (unit == null) {
+            action.run();
+            return;
+        }
+        synchronized (unit) {
+            if (!unit.closed) {
+                unit.actions.add(action);
+            }
+        }
+    }
+
+    // Writes an item that belongs to no symbol's unit, even if the symbol's own unit was aborted.
+    void putDirect(Map<String, String> item) {
+        sink.put(item);
+    }
+
+    // Forgets the units of symbols that are not analyzed any more.
+    void retain(Collection<String> symbols) {
+        units.keySet().retainAll(new HashSet<>(symbols));
+    }
+
+    @Override
+    public void put(Map<String, String> item) {
+        if (!publishes(item.get("symb"))) {
+            return;
+        }
+        onCommit(item.get("symb"), () -> sink.put(item));
+    }
+
+    @Override
+    public void delete(String symbol, Predicate<String> types) {
+        if (!publishes(symbol)) {
+            return;
+        }
+        onCommit(symbol, () -> sink.delete(symbol, types));
+    }
+
+    @Override
+    public void flush() {
+        sink.flush();
+    }
+
+    @Override
+    public void close() {
+        sink.close();
+    }
+}
@@ -0,0 +1,35 @@
+package com.ubiswal.analytics;
+
+// Bar sizes the indicators are published for. Crawler bars are 5 minutes, the others are rolled up from them.
+enum Timeframe {
+    M5("5m", 5 * 60),
+    M15("15m", 15 * 60),
+    H1("1h", 60 * 60),
+    D1("1d", 24 * 60 * 60);
+
+    private final String label;
+    private final long seconds;
+
+    Timeframe(String label, long seconds) {
+        this.label = label;
+        this.seconds = seconds;
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    // Start of the bar a wall clock time falls into. Day bars start at midnight, like the crawler's sessions.
+    long bucketOf(long epochSeconds) {
+        return Math.floorDiv(epochSeconds, seconds) * seconds;
+    }
+
+    static Timeframe fromLabel(String label) {
+        for (Timeframe timeframe : values()) {
+            if (timeframe.label.equals(label)) {
+                return timeframe;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown timeframe %s", label));
+    }
+}
@@ -3,6 +3,8 @@ package com.ubiswal.config;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -19,4 +21,172 @@ public class Config {
     @Getter
     @Setter
     private Map<String, String> stockNewsSearchStrings;
+    @Getter
+    @Setter
+    private int analyzerThreads = 8; // number of symbols each analyzer processes concurrently
+    @Getter
+    @Setter
+    private int dynamoFlushThreads = 4; // number of concurrent BatchWriteItem calls
+    @Getter
+    @Setter
+    private int renderThreads = 4; // number of charts rendered concurrently
+    @Getter
+    @Setter
+    private boolean incremental = true; // skip symbols whose input has not changed since the last run
+    @Getter
+    @Setter
+    private long partitionCacheSeconds = 300; // how long a listing of the latest hour is reused
+    @Getter
+    @Setter
+    private long partitionWatchSeconds = 0; // if positive, probe for new hours at this period instead of expiring the cache
+    @Getter
+    @Setter
+    private String storageBackend = "aws"; // aws, local (everything in storageDirectory) or memory (inputs from storageDirectory, outputs kept in memory)
+    @Getter
+    @Setter
+    private String storageDirectory; // root of a recorded bucket, laid out as <date>/<hour>/<symbol>/stock.json
+    @Getter
+    @Setter
+    private String inputBucketName = "stocks-testing"; // bucket the crawler writes to
+    @Getter
+    @Setter
+    private String imageBucketName = "ubiswal-website-contents"; // bucket the website reads charts from
+    @Getter
+    @Setter
+    private String imageCacheControl = "public, max-age=300"; // Cache-Control of uploaded charts
+    @Getter
+    @Setter
+    private String analyticsTableName = "Analytics-testing";
+    @Getter
+    @Setter
+    private String analysisDate; // yyyy-MM-dd to analyze instead of today, e.g. when replaying a recorded day
+    @Getter
+    @Setter
+    private List<String> indicatorTimeframes = Arrays.asList("5m", "15m", "1h", "1d"); // timeframes indicators are published for, empty to disable
+    @Getter
+    @Setter
+    private int correlationWindow = 200; // number of 5 minute returns correlated across symbols, 0 to disable the cross symbol stage
+    @Getter
+    @Setter
+    private int correlationTopN = 5; // most correlated symbols published per symbol
+    @Getter
+    @Setter
+    private Map<String, String> sectors; // symbol -> sector, for sector relative ranks
+    @Getter
+    @Setter
+    private List<String> alertRules = Collections.emptyList(); // e.g. "spike: volume_zscore(20) > 3", see AlertEngine for the syntax
+    @Getter
+    @Setter
+    private String alertSink = "analytics"; // "analytics" for the latest alert of each rule as an item, "file" to append every alert to alertFile
+    @Getter
+    @Setter
+    private String alertFile = "alerts.jsonl";
+    @Getter
+    @Setter
+    private String historyDirectory; // where bars are kept across runs, no history if not set
+    @Getter
+    @Setter
+    private int historyDays = 30; // how far back indicators and the history range look
+    @Getter
+    @Setter
+    private String snapshotDirectory; // where binary copies of parsed inputs are kept, json is always parsed if not set
+    @Getter
+    @Setter
+    private boolean snapshotCompression = false; // deflate, about 40% smaller news snapshots but slower to load
+    @Getter
+    @Setter
+    private int snapshotRetentionDays = 14; // snapshots of older dates are deleted at the end of each run, 0 to keep them all
+    @Getter
+    @Setter
+    private int metricsPort = 9464; // serves /metrics (prometheus) and /summary (last run), 0 to disable
+    @Getter
+    @Setter
+    private String metricsHost = "127.0.0.1"; // local only by default, "0.0.0.0" to let another host scrape
+    @Getter
+    @Setter
+    private int queryPort = 0; // serves the latest analytics of every symbol on /analytics, 0 to disable
+    @Getter
+    @Setter
+    private int queryThreads = 2;
+    @Getter
+    @Setter
+    private int backfillThreads = 8;
+    @Getter
+    @Setter
+    private int backfillAttempts = 3; // tries per partition before it is skipped
+    @Getter
+    @Setter
+    private String backfillCheckpoint = "backfill.properties"; // delete it to start a backfill over
+    @Getter
+    @Setter
+    private long backfillCheckpointSeconds = 30;
+    @Getter
+    @Setter
+    private double backfillS3RequestsPerSecond = 100; // 0 for no limit
+    @Getter
+    @Setter
+    private double backfillDynamoItemsPerSecond = 200; // 0 for no limit
+    @Getter
+    @Setter
+    private int retryAttempts = 3; // tries per S3 call, retries also need budget left
+    @Getter
+    @Setter
+    private long retryBaseMillis = 100;
+    @Getter
+    @Setter
+    private long retryMaxMillis = 2000;
+    @Getter
+    @Setter
+    private int breakerWindow = 20; // calls a circuit breaker judges the failure rate over
+    @Getter
+    @Setter
+    private double breakerFailureRate = 0.5;
+    @Getter
+    @Setter
+    private long breakerOpenSeconds = 30; // how long an open breaker refuses calls before trying one
+    @Getter
+    @Setter
+    private long symbolDeadlineSeconds = 120; // a symbol taking longer is dropped for the run, 0 for no deadline
+    @Getter
+    @Setter
+    private long scheduleMinutes = 60; // runs start every scheduleMinutes, aligned to the clock
+    @Getter
+    @Setter
+    private long scheduleOffsetMinutes = 0; // e.g. 5 to start at 5 past the hour, after the crawler is done
+    @Getter
+    @Setter
+    private long runDeadlineMinutes = 55; // a run still going after this long is interrupted, 0 for no deadline
+    @Getter
+    @Setter
+    private int shardCount = 1; // above 1, symbols are split between workers that share leaseDirectory
+    @Getter
+    @Setter
+    private String leaseDirectory;
+    @Getter
+    @Setter
+    private int maxShardsPerWorker = 0; // 0 to only limit a worker to its fair share
+    @Getter
+    @Setter
+    private long leaseMinutes = 120; // keep above runDeadlineMinutes so a slow run does not lose its shards
+    @Getter
+    @Setter
+    private int newsIndexCapacity = 50000; // news stories, urls and descriptions remembered for deduplication
+    @Getter
+    @Setter
+    private long newsIndexHours = 48; // stories not seen for this long are forgotten
+    @Getter
+    @Setter
+    private String executionMode = "sequential"; // sequential, or pipelined to run fetch, decode, analyze, render and upload as separate stages
+    @Getter
+    @Setter
+    private int fetchThreads = 16; // pipelined: concurrent downloads
+    @Getter
+    @Setter
+    private int decodeThreads = 2; // pipelined: concurrent json parsers
+    @Getter
+    @Setter
+    private int uploadThreads = 8; // pipelined: concurrent chart uploads
+    @Getter
+    @Setter
+    private int stageQueueSize = 32; // pipelined: symbols waiting in front of each stage before the stage before it blocks
 }
@@ -0,0 +1,146 @@
+package com.ubiswal.config;
+
+import com.amazonaws.SdkClientException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.storage.InputSource;
+import com.ubiswal.storage.JsonObjects;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Holds the latest config.json as a versioned snapshot. refresh() reads the config conditionally on the ETag of the
+ * current snapshot, so an unchanged config costs one request and is never downloaded or parsed again.
+ *
+ * A new snapshot records which symbols were added and removed since the previous one, and whether anything besides
+ * the symbols changed, so callers only redo the work a change calls for. Snapshots are not modified once published.
+ */
+public class ConfigManager {
+    private static final ObjectReader CONFIG_READER = JsonObjects.readerFor(Config.class);
+    private static final ObjectMapper TREE_MAPPER = new ObjectMapper();
+
+    public static final class Snapshot {
+        @Getter
+        private final Config config;
+        @Getter
+        private final String eTag;
+        @Getter
+        private final long version; // starts at 1 and grows with every change
+        @Getter
+        private final List<String> addedSymbols;
+        @Getter
+        private final List<String> removedSymbols;
+        @Getter
+        private final boolean settingsChanged; // true if anything but the symbol lists changed
+
+        Snapshot(Config config, String eTag, long version, List<String> addedSymbols, List<String> removedSymbols, boolean settingsChanged) {
+            this.config = config;
+            this.eTag = eTag;
+            this.version = version;
+            this.addedSymbols = addedSymbols;
+            this.removedSymbols = removedSymbols;
+            this.settingsChanged = settingsChanged;
+        }
+    }
+
+    private final InputSource source;
+    private final String key;
+    private volatile Snapshot current;
+    private Logger log = Logger.get(this.getClass());
+
+    public ConfigManager(InputSource source, String key) {
+        this.source = source;
+        this.key = key;
+    }
+
+    // The latest snapshot, or null before the first successful refresh.
+    public Snapshot getCurrent() {
+        return current;
+    }
+
+    /*
+     * Returns a new snapshot if the config changed, or the current one if not. Once a config has been read, a failed
+     * read keeps the current snapshot, so a bad upload or a network error does not stop the runs.
+     */
+    public synchronized Snapshot refresh() throws IOException {
+        Snapshot previous = current;
+        JsonObjects.Versioned<Config> read;
+        try {
+            read = JsonObjects.readIfChanged(source, key, previous == null ? null : previous.eTag, CONFIG_READER);
+        } catch (IOException | SdkClientException e) {
+            if (previous == null) {
+                throw e;
+            }
+            Metrics.counter("analytics_config_reload_failures_total").inc();
+            log.error(e, String.format("Failed to reload %s, keeping config version %d", key, previous.version));
+            return previous;
+        }
+        if (read == null) {
+            return previous;
+        }
+        Config config = freeze(read.getValue());
+        Snapshot next;
+        if (previous == null) {
+            next = new Snapshot(config, read.getETag(), 1, config.getStockSymbols(), Collections.emptyList(), true);
+        } else {
+            next = new Snapshot(config, read.getETag(), previous.version + 1,
+                    difference(config.getStockSymbols(), previous.config.getStockSymbols()),
+                    difference(previous.config.getStockSymbols(), config.getStockSymbols()),
+                    !settings(config).equals(settings(previous.config)));
+        }
+        log.info(String.format("Loaded config version %d: %d symbols added, %d removed, settings %s", next.version,
+                next.addedSymbols.size(), next.removedSymbols.size(), next.settingsChanged ? "changed" : "unchanged"));
+        current = next;
+        return next;
+    }
+
+    // Replaces the collections with unmodifiable copies, so that a published snapshot cannot change.
+    private static Config freeze(Config config) {
+        List<String> symbols = config.getStockSymbols() == null ? Collections.emptyList() : config.getStockSymbols();
+        config.setStockSymbols(Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(symbols))));
+        if (config.getStockNewsSearchStrings() != null) {
+            config.setStockNewsSearchStrings(Collections.unmodifiableMap(new HashMap<>(config.getStockNewsSearchStrings())));
+        }
+        if (config.getIndicatorTimeframes() != null) {
+            config.setIndicatorTimeframes(Collections.unmodifiableList(new ArrayList<>(config.getIndicatorTimeframes())));
+        }
+        if (config.getAlertRules() != null) {
+            config.setAlertRules(Collections.unmodifiableList(new ArrayList<>(config.getAlertRules())));
+        }
+        if (config.getSectors() != null) {
+            config.setSectors(Collections.unmodifiableMap(new HashMap<>(config.getSectors())));
+        }
+        return config;
+    }
+
+    // Everything in the config except the symbol lists, for telling a symbols only change from a settings change.
+    private static ObjectNode settings(Config config) {
+        ObjectNode tree = TREE_MAPPER.valueToTree(config);
+        tree.remove("stockSymbols");
+        tree.remove("stockNewsSearchStrings");
+        return tree;
+    }
+
+    // Symbols of `from` that are not in `without`, in the order of `from`.
+    private static List<String> difference(List<String> from, List<String> without) {
+        Set<String> excluded = new HashSet<>(without);
+        List<String> result = new ArrayList<>();
+        for (String symbol : from) {
+            if (!excluded.contains(symbol)) {
+                result.add(symbol);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -6,83 +6,542 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.model.S3ObjectInputStream;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubiswal.analytics.AbstractAnalyzer;
+import com.ubiswal.analytics.AlertEngine;
+import com.ubiswal.analytics.AnalysisState;
+import com.ubiswal.analytics.Backfill;
+import com.ubiswal.analytics.ChartRenderer;
+import com.ubiswal.analytics.CrossSection;
+import com.ubiswal.analytics.HistoryStore;
+import com.ubiswal.analytics.IndicatorEngine;
 import com.ubiswal.analytics.NewsAnalyzer;
+import com.ubiswal.analytics.NewsIndex;
+import com.ubiswal.analytics.PartitionDiscovery;
+import com.ubiswal.analytics.Pipeline;
 import com.ubiswal.analytics.StocksAnalyzer;
 import com.twitter.logging.Logger;
 import com.ubiswal.config.Config;
-import org.apache.commons.io.FileUtils;
+import com.ubiswal.config.ConfigManager;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.metrics.MetricsServer;
+import com.ubiswal.query.AnalyticsCache;
+import com.ubiswal.query.QueryServer;
+import com.ubiswal.resilience.CircuitBreaker;
+import com.ubiswal.resilience.Retryer;
+import com.ubiswal.metrics.RunSummary;
+import com.ubiswal.scheduler.JobScheduler;
+import com.ubiswal.scheduler.ShardLeases;
+import com.ubiswal.storage.AlertSink;
+import com.ubiswal.storage.AnalyticsAlertSink;
+import com.ubiswal.storage.AnalyticsSink;
+import com.ubiswal.storage.DynamoBatchWriter;
+import com.ubiswal.storage.InMemoryStorage;
+import com.ubiswal.storage.InputSource;
+import com.ubiswal.storage.JsonLinesAlertSink;
+import com.ubiswal.storage.LocalDirectoryStorage;
+import com.ubiswal.storage.ResilientStorage;
+import com.ubiswal.storage.S3ImageSink;
+import com.ubiswal.storage.S3InputSource;
+import com.ubiswal.storage.SnapshotStore;
+import com.ubiswal.storage.Storage;
+import com.ubiswal.storage.ThrottledStorage;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-class AnalyzerCron extends TimerTask{
+class AnalyzerCron implements Runnable {
     private final AmazonS3 s3Client;
     private final AmazonDynamoDB dynamoDB;
+    private final ConfigManager configManager;
+    private long configVersion;
+    private StocksAnalyzer stocksAnalyzer;
+    private NewsAnalyzer newsAnalyzer;
+    private Storage storage;
+    private String storageSettings; // what the storage was built from
+    private DynamoBatchWriter dynamoWriter;
+    private ChartRenderer chartRenderer;
+    private int renderThreads;
+    private final AnalysisState analysisState = new AnalysisState();
+    private PartitionDiscovery partitions;
+    private HistoryStore history;
+    private SnapshotStore snapshots;
+    private JsonLinesAlertSink alertFile;
+    private NewsIndex newsIndex;
+    private Pipeline pipeline;
+    private MetricsServer metricsServer;
+    private AnalyticsCache queryCache;
+    private QueryServer queryServer;
+    private ShardLeases leases;
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+    private volatile Runnable onNewPartition;
+    private final ExecutorService analyzerPool = Executors.newFixedThreadPool(2);
     private Logger log = Logger.get(this.getClass());
 
-    AnalyzerCron(AmazonS3 s3Client, AmazonDynamoDB dynamoDb){
+    AnalyzerCron(AmazonS3 s3Client, AmazonDynamoDB dynamoDb, ConfigManager configManager){
         this.s3Client = s3Client;
         this.dynamoDB = dynamoDb;
+        this.configManager = configManager;
+    }
+
+    // Called when the partition watcher sees a new hour from the crawler, e.g. to start a run right away.
+    void setOnNewPartition(Runnable onNewPartition) {
+        this.onNewPartition = onNewPartition;
     }
 
     @Override
     public void run() {
         try {
-            log.info("fetching config");
-            Config configObj = Main.getConfig(s3Client);
-            log.info(String.format("Running analysis for %s", configObj.getStockSymbols()));
-            StocksAnalyzer stocksAnalyzer = new StocksAnalyzer(s3Client, dynamoDB, configObj.getStockSymbols(), "stocks-testing");
-            NewsAnalyzer newsAnalyzer = new NewsAnalyzer(s3Client, dynamoDB, configObj.getStockSymbols(), "stocks-testing");
-            stocksAnalyzer.runAnalyzer();
-            newsAnalyzer.runAnalyzer();
-        } catch (IOException e) {
-            log.error("Failed to run analyzer for this batch. Will try again in 2 hours.");
+            ConfigManager.Snapshot snapshot = configManager.refresh();
+            Config configObj = snapshot.getConfig();
+            startMetricsServer(configObj);
+            startQueryServer(configObj);
+            RunSummary summary = RunSummary.start();
+            if (snapshot.getVersion() != configVersion) {
+                applyConfig(snapshot);
+            }
+            List<String> symbols = getSymbols(configObj);
+            log.info(String.format("Running analysis for %s", symbols));
+            Storage storage = getStorage(configObj);
+            if (!configObj.isIncremental()) {
+                analysisState.clear();
+            }
+            StocksAnalyzer stocksAnalyzer = getStocksAnalyzer(configObj, storage);
+            NewsAnalyzer newsAnalyzer = getNewsAnalyzer(configObj, storage);
+            stocksAnalyzer.setStockSymbols(symbols);
+            newsAnalyzer.setStockSymbols(symbols);
+            Future<?> stocksRun = analyzerPool.submit(() -> {
+                Metrics.time("stocks_analyzer", stocksAnalyzer::runAnalyzer);
+            });
+            Future<?> newsRun = analyzerPool.submit(() -> {
+                Metrics.time("news_analyzer", newsAnalyzer::runAnalyzer);
+            });
+            try {
+                stocksRun.get();
+                newsRun.get();
+            } catch (InterruptedException e) {
+                // the scheduler's deadline passed, stop the analyzers and keep what they queued so far
+                log.error("Interrupted, cancelling the analyzers");
+                stocksRun.cancel(true);
+                newsRun.cancel(true);
+                Thread.currentThread().interrupt();
+            } finally {
+                Metrics.time("flush", () -> {
+                    storage.getAnalyticsSink().flush();
+                    if (history != null) {
+                        history.flush();
+                    }
+                    if (alertFile != null) {
+                        alertFile.flush();
+                    }
+                });
+            }
+            if (snapshots != null && configObj.getSnapshotRetentionDays() > 0) {
+                snapshots.prune(configObj.getSnapshotRetentionDays());
+            }
+            long elapsedMillis = summary.elapsedMillis();
+            Metrics.histogram("analytics_run_seconds").observeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+            Metrics.gauge("analytics_last_run_seconds", () -> elapsedMillis / 1000.0);
+            log.info(String.format("Analyzed %d symbols in %d ms", symbols.size(), elapsedMillis));
+            String json = summary.finish(symbols.size());
+            log.info(String.format("Run summary: %s", json));
+            if (metricsServer != null) {
+                metricsServer.setLastRunSummary(json);
+            }
+        } catch (IOException | ExecutionException e) {
+            Metrics.counter("analytics_run_failures_total").inc();
+            log.error(e, "Failed to run analyzer for this batch. Will try again on the next run.");
+        }
+    }
+
+    /*
+     * Replays the partitions from `from` to `to` through both analyzers, with S3 and DynamoDB throttled to the
+     * backfill limits. Returns the number of analyzer and symbol pairs that stopped at a failing partition.
+     */
+    int backfill(String from, String to) throws IOException, InterruptedException {
+        ConfigManager.Snapshot snapshot = configManager.refresh();
+        Config configObj = snapshot.getConfig();
+        configVersion = snapshot.getVersion();
+        startMetricsServer(configObj);
+        Storage storage = ThrottledStorage.of(getStorage(configObj), configObj.getBackfillS3RequestsPerSecond(), configObj.getBackfillDynamoItemsPerSecond());
+        Map<String, AbstractAnalyzer> analyzers = new LinkedHashMap<>();
+        analyzers.put("stocks", getStocksAnalyzer(configObj, storage));
+        analyzers.put("news", getNewsAnalyzer(configObj, storage));
+        Backfill backfill = new Backfill(storage.getInputSource(), analyzers, () -> {
+            storage.getAnalyticsSink().flush();
+            if (history != null) {
+                history.flush();
+            }
+            if (alertFile != null) {
+                alertFile.flush();
+            }
+        }, Paths.get(configObj.getBackfillCheckpoint()), configObj.getBackfillThreads(), configObj.getBackfillAttempts(),
+                configObj.getBackfillCheckpointSeconds());
+        return backfill.run(from, to, getSymbols(configObj));
+    }
+
+    void shutdown() {
+        analyzerPool.shutdown();
+        if (storage != null) {
+            storage.getAnalyticsSink().close();
+        }
+        if (chartRenderer != null) {
+            chartRenderer.shutdown();
+        }
+        if (alertFile != null) {
+            alertFile.close();
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        if (partitions != null) {
+            partitions.stopWatching();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (queryServer != null) {
+            queryServer.stop();
+        }
+        if (leases != null) {
+            leases.releaseAll();
+        }
+        if (history != null) {
+            try {
+                history.close();
+            } catch (IOException e) {
+                log.error(e, "Failed to close the history store");
+            }
+        }
+    }
+
+    // Removed symbols are forgotten and their items deleted, added ones have no state yet and get a full analysis on this run.
+    private void applyConfig(ConfigManager.Snapshot snapshot) {
+        for (String symbol : snapshot.getRemovedSymbols()) {
+            analysisState.remove(symbol);
+            if (queryCache != null) {
+                queryCache.remove(symbol);
+            }
+            if (storage != null) {
+                try {
+                    storage.getAnalyticsSink().delete(symbol, type -> true);
+                } catch (SdkClientException e) {
+                    log.error(e, String.format("Failed to delete the items of removed symbol %s", symbol));
+                }
+            }
+        }
+        if (configVersion > 0 && !snapshot.getAddedSymbols().isEmpty()) {
+            log.info(String.format("Symbols added: %s", snapshot.getAddedSymbols()));
+        }
+        if (!snapshot.getRemovedSymbols().isEmpty()) {
+            log.info(String.format("Symbols removed: %s", snapshot.getRemovedSymbols()));
         }
+        if (snapshot.isSettingsChanged()) {
+            // rebuilt on their next use with the new settings
+            stocksAnalyzer = null;
+            newsAnalyzer = null;
+            snapshots = null;
+            if (pipeline != null) {
+                pipeline.shutdown();
+                pipeline = null;
+            }
+        }
+        configVersion = snapshot.getVersion();
+    }
+
+    // The analyzers are kept across runs and only rebuilt when a setting other than the symbols changes.
+    private StocksAnalyzer getStocksAnalyzer(Config configObj, Storage storage) throws IOException {
+        if (stocksAnalyzer == null) {
+            stocksAnalyzer = new StocksAnalyzer(storage.getInputSource(), getPartitionDiscovery(configObj), storage.getAnalyticsSink(), storage.getImageSink(), getChartRenderer(configObj), new IndicatorEngine(configObj.getIndicatorTimeframes()),
+                    new AlertEngine(configObj.getAlertRules()), getAlertSink(configObj, storage),
+                    new CrossSection(configObj.getCorrelationWindow(), configObj.getCorrelationTopN(), configObj.getSectors()),
+                    getHistoryStore(configObj), configObj.getHistoryDays(), analysisState, configObj.getStockSymbols(), configObj.getAnalysisDate(), configObj.getAnalyzerThreads());
+            stocksAnalyzer.setPipeline(getPipeline(configObj));
+            stocksAnalyzer.setSnapshots(getSnapshotStore(configObj));
+            stocksAnalyzer.setSymbolDeadlineMillis(TimeUnit.SECONDS.toMillis(configObj.getSymbolDeadlineSeconds()));
+        }
+        return stocksAnalyzer;
+    }
+
+    private NewsAnalyzer getNewsAnalyzer(Config configObj, Storage storage) throws IOException {
+        if (newsAnalyzer == null) {
+            newsAnalyzer = new NewsAnalyzer(storage.getInputSource(), getPartitionDiscovery(configObj), storage.getAnalyticsSink(), analysisState, getNewsIndex(configObj), configObj.getStockSymbols(), configObj.getAnalysisDate(), configObj.getAnalyzerThreads());
+            newsAnalyzer.setPipeline(getPipeline(configObj));
+            newsAnalyzer.setSnapshots(getSnapshotStore(configObj));
+            newsAnalyzer.setSymbolDeadlineMillis(TimeUnit.SECONDS.toMillis(configObj.getSymbolDeadlineSeconds()));
+        }
+        return newsAnalyzer;
+    }
+
+    // Shared by both analyzers in pipelined mode, null in sequential mode.
+    private Pipeline getPipeline(Config configObj) {
+        if (pipeline == null && configObj.getExecutionMode().equals("pipelined")) {
+            pipeline = new Pipeline(configObj.getFetchThreads(), configObj.getDecodeThreads(), configObj.getAnalyzerThreads(),
+                    configObj.getRenderThreads(), configObj.getUploadThreads(), configObj.getStageQueueSize());
+            log.info("Running the analyzers as a pipeline");
+        }
+        return pipeline;
+    }
+
+    // Outlives the analyzers, so that a settings change does not forget the stories already written.
+    private NewsIndex getNewsIndex(Config configObj) {
+        if (newsIndex == null) {
+            newsIndex = new NewsIndex(configObj.getNewsIndexCapacity(), TimeUnit.HOURS.toMillis(configObj.getNewsIndexHours()));
+        }
+        return newsIndex;
+    }
+
+    /*
+     * Built on the first run, and built again with the same wrapping when the backend, a bucket, the table or the
+     * flush threads change. The old sink is flushed and closed, and everything holding on to the old storage is
+     * rebuilt. As the new storage has none of the items yet, every symbol is published again on the next run.
+     */
+    private Storage getStorage(Config configObj) {
+        String settings = String.join("|", configObj.getStorageBackend(), configObj.getStorageDirectory(),
+                configObj.getInputBucketName(), configObj.getImageBucketName(), configObj.getImageCacheControl(),
+                configObj.getAnalyticsTableName(), String.valueOf(configObj.getDynamoFlushThreads()));
+        if (storage != null && !settings.equals(storageSettings)) {
+            log.info("Storage settings or the query server changed, building the storage again");
+            storage.getAnalyticsSink().close();
+            storage = null;
+            dynamoWriter = null;
+            stocksAnalyzer = null;
+            newsAnalyzer = null;
+            if (partitions != null) {
+                partitions.stopWatching();
+                partitions = null;
+            }
+            analysisState.forgetPublished();
+        }
+        if (storage == null) {
+            switch (configObj.getStorageBackend()) {
+                case "local":
+                    LocalDirectoryStorage local = new LocalDirectoryStorage(Paths.get(configObj.getStorageDirectory()));
+                    storage = new Storage(local, served(local), local);
+                    break;
+                case "memory":
+                    InMemoryStorage memory = new InMemoryStorage();
+                    InputSource inputs = configObj.getStorageDirectory() == null ? memory : new LocalDirectoryStorage(Paths.get(configObj.getStorageDirectory()));
+                    storage = new Storage(inputs, served(memory), memory);
+                    break;
+                default:
+                    storage = ResilientStorage.of(new Storage(new S3InputSource(s3Client, configObj.getInputBucketName()),
+                            served(getDynamoWriter(configObj)),
+                            new S3ImageSink(s3Client, configObj.getImageBucketName(), configObj.getImageCacheControl())),
+                            new Retryer(getBreaker("s3", configObj), configObj.getRetryAttempts(), configObj.getRetryBaseMillis(), configObj.getRetryMaxMillis()));
+            }
+            storageSettings = settings;
+            log.info(String.format("Using the %s storage backend", configObj.getStorageBackend()));
+        }
+        return storage;
+    }
+
+    // The sink, also feeding the query cache if the query server is on.
+    private AnalyticsSink served(AnalyticsSink sink) {
+        return queryCache == null ? sink : queryCache.tee(sink);
+    }
+
+    // Shared by both analyzers and kept across runs, so listings are cached and the watcher keeps running.
+    private PartitionDiscovery getPartitionDiscovery(Config configObj) {
+        if (partitions == null) {
+            partitions = new PartitionDiscovery(storage.getInputSource(), configObj.getPartitionCacheSeconds());
+            if (configObj.getPartitionWatchSeconds() > 0) {
+                partitions.addListener((date, hour) -> {
+                    Runnable listener = onNewPartition;
+                    if (listener != null) {
+                        listener.run();
+                    }
+                });
+                partitions.watch(configObj.getPartitionWatchSeconds(), configObj.getPartitionCacheSeconds());
+            }
+        }
+        return partitions;
+    }
+
+    // The writer and its flush threads outlive a run. It is closed with the storage, when the storage settings change.
+    private AnalyticsSink getDynamoWriter(Config configObj) {
+        if (dynamoWriter == null) {
+            dynamoWriter = new DynamoBatchWriter(dynamoDB, configObj.getAnalyticsTableName(), configObj.getDynamoFlushThreads(), getBreaker("dynamo", configObj));
+        }
+        return dynamoWriter;
+    }
+
+    // All configured symbols, or only those of the shards this worker holds a lease for.
+    private List<String> getSymbols(Config configObj) throws IOException {
+        if (configObj.getShardCount() <= 1) {
+            return configObj.getStockSymbols();
+        }
+        if (leases == null) {
+            leases = new ShardLeases(Paths.get(configObj.getLeaseDirectory()), configObj.getShardCount(),
+                    configObj.getMaxShardsPerWorker(), TimeUnit.MINUTES.toMillis(configObj.getLeaseMinutes()));
+        }
+        return leases.acquire(configObj.getStockSymbols());
+    }
+
+    // Started on the first run. Moving it to another port takes a restart.
+    private void startMetricsServer(Config configObj) {
+        if (metricsServer == null && configObj.getMetricsPort() > 0) {
+            try {
+                metricsServer = new MetricsServer(configObj.getMetricsHost(), configObj.getMetricsPort());
+                log.info(String.format("Serving metrics on %s:%d", configObj.getMetricsHost(), configObj.getMetricsPort()));
+            } catch (IOException e) {
+                log.error(e, String.format("Failed to serve metrics on port %d", configObj.getMetricsPort()));
+            }
+        }
+    }
+
+    /*
+     * Started on the first run that sets a query port, before the storage so that every item reaches the cache. If
+     * the storage was already built it is built again to feed the cache, and every symbol is published again to fill
+     * it. Moving it to another port takes a restart.
+     */
+    private void startQueryServer(Config configObj) {
+        if (queryServer == null && configObj.getQueryPort() > 0) {
+            AnalyticsCache cache = new AnalyticsCache();
+            try {
+                queryServer = new QueryServer(configObj.getQueryPort(), configObj.getQueryThreads(), cache);
+                queryCache = cache;
+                storageSettings = null;
+                log.info(String.format("Serving analytics on port %d", configObj.getQueryPort()));
+            } catch (IOException e) {
+                log.error(e, String.format("Failed to serve analytics on port %d", configObj.getQueryPort()));
+            }
+        }
+    }
+
+    // Opened on the first run that configures a history directory and kept open, since its segments are mapped.
+    private HistoryStore getHistoryStore(Config configObj) throws IOException {
+        if (history == null && configObj.getHistoryDirectory() != null) {
+            history = new HistoryStore(Paths.get(configObj.getHistoryDirectory()));
+        }
+        return history;
+    }
+
+    // Alerts go next to the analytics unless alertSink is "file". The file is opened once, moving it takes a restart.
+    private AlertSink getAlertSink(Config configObj, Storage storage) throws IOException {
+        if (!configObj.getAlertSink().equals("file")) {
+            return new AnalyticsAlertSink(storage.getAnalyticsSink());
+        }
+        if (alertFile == null) {
+            alertFile = new JsonLinesAlertSink(Paths.get(configObj.getAlertFile()));
+        }
+        return alertFile;
+    }
+
+    // Shared by both analyzers, null if snapshots are off.
+    private SnapshotStore getSnapshotStore(Config configObj) throws IOException {
+        if (snapshots == null && configObj.getSnapshotDirectory() != null) {
+            snapshots = new SnapshotStore(Paths.get(configObj.getSnapshotDirectory()), configObj.isSnapshotCompression());
+        }
+        return snapshots;
+    }
+
+    private ChartRenderer getChartRenderer(Config configObj) {
+        int threads = configObj.getRenderThreads();
+        if (chartRenderer == null || renderThreads != threads) {
+            if (chartRenderer != null) {
+                chartRenderer.shutdown();
+            }
+            chartRenderer = new ChartRenderer(threads, getBreaker("render", configObj));
+            renderThreads = threads;
+        }
+        return chartRenderer;
+    }
+
+    // One per dependency, kept for the life of the process. Changing the breaker settings takes a restart.
+    private CircuitBreaker getBreaker(String dependency, Config configObj) {
+        return breakers.computeIfAbsent(dependency, name -> new CircuitBreaker(name, configObj.getBreakerWindow(),
+                configObj.getBreakerFailureRate(), TimeUnit.SECONDS.toMillis(configObj.getBreakerOpenSeconds())));
     }
 }
 public class Main {
     private static final String BUCKETNAME = "stocks-testing" ;
+    private static Logger log = Logger.get(Main.class);
+
+    // Usage: java -jar analytics.jar [--config <local config.json>] [--once | --backfill <from> <to>]
+    // where from and to are <date> or <date>/<hour>, e.g. --backfill 2020-01-01 2020-03-31/12
+    // A backfill updates the history and the alert file. The latest-value analytics, charts and alerts are only
+    // written from the newest partition in the bucket, so replaying older ones leaves the live values as they are.
+    public static void main(String args[]) throws IOException, InterruptedException {
+        String configPath = null;
+        boolean once = false;
+        String backfillFrom = null;
+        String backfillTo = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config") && i + 1 < args.length) {
+                configPath = args[++i];
+            } else if (args[i].equals("--once")) {
+                once = true;
+            } else if (args[i].equals("--backfill") && i + 2 < args.length) {
+                backfillFrom = args[++i];
+                backfillTo = args[++i];
+            }
+        }
 
-    public static void main(String args[]) throws IOException {
         final AmazonS3 s3Client = AmazonS3ClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
         AmazonDynamoDB dynamoDB = AmazonDynamoDBClientBuilder
                 .standard()
                 .withRegion(Regions.US_EAST_1)
                 .build();
-        AnalyzerCron analyzerCron = new AnalyzerCron(s3Client, dynamoDB);
+        InputSource configSource;
+        String configKey;
+        if (configPath == null) {
+            configSource = new S3InputSource(s3Client, BUCKETNAME);
+            configKey = "config.json";
+        } else {
+            Path config = Paths.get(configPath).toAbsolutePath();
+            configSource = new LocalDirectoryStorage(config.getParent());
+            configKey = config.getFileName().toString();
+        }
+        ConfigManager configManager = new ConfigManager(configSource, configKey);
+        AnalyzerCron analyzerCron = new AnalyzerCron(s3Client, dynamoDB, configManager);
 
-        Timer timer = new Timer();
-        timer.schedule(analyzerCron, 0, 3600000);
-    }
+        if (backfillFrom != null) {
+            int failed;
+            try {
+                failed = analyzerCron.backfill(backfillFrom, backfillTo);
+            } finally {
+                analyzerCron.shutdown();
+            }
+            if (failed > 0) {
+                log.error(String.format("%d symbols stopped at a failing partition, see the log. Running the backfill again resumes them.", failed));
+                System.exit(1);
+            }
+            return;
+        }
 
-    public static Config getConfig(final AmazonS3 s3Client) throws IOException {
-        try {
-            S3Object s3obj = s3Client.getObject(BUCKETNAME , "config.json");
-            S3ObjectInputStream inputStream = s3obj.getObjectContent();
-            FileUtils.copyInputStreamToFile(inputStream, new File("config.json"));
-        } catch (SdkClientException e) {
-            System.out.println("Failed to download config file from s3 because " + e.getMessage());
-            throw e;
-        } catch (IOException e) {
-            System.out.println("Failed to save downloaded config file from s3 because " + e.getMessage());
-            throw e;
-        }
-
-        //use jackson for json to class conversion for the Config
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            // JSON file to Java object
-            Config config = mapper.readValue(new File("config.json"), Config.class);
-            return config;
-        } catch (IOException e) {
-            System.out.println("Failed to read the downloaded config file from s3 because " + e.getMessage());
-            throw e;
+        if (once) {
+            analyzerCron.run();
+            analyzerCron.shutdown();
+            return;
         }
 
+        // The schedule is read once at startup, changing it takes a restart.
+        Config schedule;
+        try {
+            schedule = configManager.refresh().getConfig();
+        } catch (IOException | SdkClientException e) {
+            log.warning("Failed to read the schedule from the config, using the defaults");
+            schedule = new Config();
+        }
+        JobScheduler scheduler = new JobScheduler();
+        JobScheduler.Job job = scheduler.schedule("analytics", analyzerCron,
+                TimeUnit.MINUTES.toMillis(schedule.getScheduleMinutes()),
+                TimeUnit.MINUTES.toMillis(schedule.getScheduleOffsetMinutes()),
+                TimeUnit.MINUTES.toMillis(schedule.getRunDeadlineMinutes()), true);
+        analyzerCron.setOnNewPartition(() -> job.trigger("new partition"));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdown();
+            analyzerCron.shutdown();
+        }));
     }
 }
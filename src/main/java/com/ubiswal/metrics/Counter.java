@@ -0,0 +1,23 @@
+package com.ubiswal.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic count, cheap to bump from many threads at once.
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
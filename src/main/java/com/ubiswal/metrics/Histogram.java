@@ -0,0 +1,64 @@
+package com.ubiswal.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency distribution over fixed buckets, from a millisecond up to five minutes.
+public final class Histogram {
+    static final double[] BUCKET_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    // One count per bucket plus one for everything above the last bucket.
+    private final LongAdder[] counts = new LongAdder[BUCKET_SECONDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void observeNanos(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    // Times the block it is opened for, e.g. try (Timer timer = histogram.time()) { ... }
+    public Timer time() {
+        return new Timer(this);
+    }
+
+    // Per bucket counts (not cumulative) followed by the sum of all observations in nanoseconds.
+    long[] snapshot() {
+        long[] snapshot = new long[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        snapshot[counts.length] = sumNanos.sum();
+        return snapshot;
+    }
+
+    public static final class Timer implements AutoCloseable {
+        private final Histogram histogram;
+        private final long start = System.nanoTime();
+
+        private Timer(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void close() {
+            histogram.observeNanos(System.nanoTime() - start);
+        }
+    }
+}
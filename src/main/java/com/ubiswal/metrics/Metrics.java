@@ -0,0 +1,217 @@
+package com.ubiswal.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/*
+ * Process wide registry of counters, histograms and gauges, looked up by name and label pairs the way loggers are
+ * looked up by class. Metrics are created on first use and live for the life of the process.
+ *
+ *   Metrics.counter("analytics_symbol_failures_total", "analyzer", "stocks").inc();
+ *   Map<ChartStyle, byte[]> images = Metrics.time("render", () -> render(series));
+ */
+public final class Metrics {
+    public static final String STAGE_SECONDS = "analytics_stage_seconds";
+
+    private enum Type {
+        COUNTER("counter"), HISTOGRAM("histogram"), GAUGE("gauge");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    // All series of one metric name, keyed by their rendered labels.
+    private static final class Family {
+        final Type type;
+        final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(Type type) {
+            this.type = type;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    private static final ConcurrentMap<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, ConcurrentMap<String, Counter>> SYMBOL_COUNTS = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String... labels) {
+        return (Counter) family(name, Type.COUNTER).series.computeIfAbsent(labels(labels), key -> new Counter());
+    }
+
+    public static Histogram histogram(String name, String... labels) {
+        return (Histogram) family(name, Type.HISTOGRAM).series.computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    /*
+     * Counts an event of one symbol, e.g. a failure, for the run summary only. Prometheus gets the total without the
+     * symbol, as a label per symbol would make a series per symbol.
+     */
+    public static void countSymbol(String name, String symbol) {
+        SYMBOL_COUNTS.computeIfAbsent(name, key -> new ConcurrentSkipListMap<>()).computeIfAbsent(symbol, key -> new Counter()).inc();
+    }
+
+    // Registers or replaces the value read when the gauge is exported, e.g. the size of a queue.
+    public static void gauge(String name, Supplier<? extends Number> value, String... labels) {
+        family(name, Type.GAUGE).series.put(labels(labels), value);
+    }
+
+    // Times one stage of a run into analytics_stage_seconds{stage="..."}, until the timer is closed.
+    public static Histogram.Timer stage(String stage) {
+        return histogram(STAGE_SECONDS, "stage", stage).time();
+    }
+
+    // Runs the call as one stage of a run and returns its result.
+    public static <T, E extends Exception> T time(String stage, Call<T, E> call) throws E {
+        Histogram.Timer timer = stage(stage);
+        try {
+            return call.call();
+        } finally {
+            timer.close();
+        }
+    }
+
+    public static <E extends Exception> void time(String stage, Task<E> task) throws E {
+        Histogram.Timer timer = stage(stage);
+        try {
+            task.run();
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Current value of every counter and histogram, keyed by name{labels}, for diffing against a later snapshot.
+    static Map<String, long[]> snapshot() {
+        Map<String, long[]> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Family> family : FAMILIES.entrySet()) {
+            for (Map.Entry<String, Object> series : family.getValue().series.entrySet()) {
+                String key = family.getKey() + series.getKey();
+                if (family.getValue().type == Type.COUNTER) {
+                    snapshot.put(key, new long[]{((Counter) series.getValue()).get()});
+                } else if (family.getValue().type == Type.HISTOGRAM) {
+                    snapshot.put(key, ((Histogram) series.getValue()).snapshot());
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    // Current count of every symbol event, keyed by name and then symbol.
+    static Map<String, Map<String, Long>> symbolCounts() {
+        Map<String, Map<String, Long>> counts = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentMap<String, Counter>> name : SYMBOL_COUNTS.entrySet()) {
+            Map<String, Long> symbols = new TreeMap<>();
+            for (Map.Entry<String, Counter> symbol : name.getValue().entrySet()) {
+                symbols.put(symbol.getKey(), symbol.getValue().get());
+            }
+            counts.put(name.getKey(), symbols);
+        }
+        return counts;
+    }
+
+    // Current value of every gauge, keyed by name{labels}.
+    static Map<String, Number> gauges() {
+        Map<String, Number> gauges = new TreeMap<>();
+        for (Map.Entry<String, Family> family : FAMILIES.entrySet()) {
+            if (family.getValue().type == Type.GAUGE) {
+                for (Map.Entry<String, Object> series : family.getValue().series.entrySet()) {
+                    gauges.put(family.getKey() + series.getKey(), read(series.getValue()));
+                }
+            }
+        }
+        return gauges;
+    }
+
+    // Prometheus text exposition format, version 0.0.4.
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# TYPE ").append(name).append(' ').append(family.type.text).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                switch (family.type) {
+                    case COUNTER:
+                        out.append(name).append(labels).append(' ').append(((Counter) series.getValue()).get()).append('\n');
+                        break;
+                    case GAUGE:
+                        out.append(name).append(labels).append(' ').append(read(series.getValue())).append('\n');
+                        break;
+                    default:
+                        appendHistogram(out, name, labels, ((Histogram) series.getValue()).snapshot());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, String labels, long[] snapshot) {
+        long cumulative = 0;
+        for (int i = 0; i <= Histogram.BUCKET_SECONDS.length; i++) {
+            cumulative += snapshot[i];
+            String le = i < Histogram.BUCKET_SECONDS.length ? Double.toString(Histogram.BUCKET_SECONDS[i]) : "+Inf";
+            out.append(name).append("_bucket").append(withLabel(labels, "le", le)).append(' ').append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum").append(labels).append(' ').append(snapshot[snapshot.length - 1] / 1e9).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+
+    private static Family family(String name, Type type) {
+        Family family = FAMILIES.computeIfAbsent(name, key -> new Family(type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(String.format("%s is a %s, not a %s", name, family.type.text, type.text));
+        }
+        return family;
+    }
+
+    private static Number read(Object gauge) {
+        @SuppressWarnings("unchecked")
+        Number value = ((Supplier<? extends Number>) gauge).get();
+        return value == null ? 0 : value;
+    }
+
+    // {k1="v1",k2="v2"} from alternating names and values, or an empty string without labels.
+    static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must come in name, value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = String.format("%s=\"%s\"", name, value);
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,49 @@
+package com.ubiswal.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/*
+ * Serves the metrics over http on a single background thread:
+ *   /metrics  Prometheus text format
+ *   /summary  json summary of the last completed run
+ */
+public class MetricsServer {
+    private final HttpServer server;
+    private volatile String lastRunSummary = "{}";
+
+    public MetricsServer(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, "text/plain; version=0.0.4; charset=utf-8", Metrics.prometheus()));
+        server.createContext("/summary", exchange -> respond(exchange, "application/json", lastRunSummary));
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    public void setLastRunSummary(String summary) {
+        this.lastRunSummary = summary;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.ubiswal.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * What changed in the metrics during one run, as json: the run duration, count, total and percentiles of every
+ * stage, every counter that moved, and the symbols behind per symbol events such as failedSymbols and staleSymbols,
+ * with how often each happened. Percentiles are bucket upper bounds, so they are estimates; anything slower
+ * than the last bucket reports that bucket's bound.
+ */
+public final class RunSummary {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String STAGE_PREFIX = Metrics.STAGE_SECONDS + "{stage=\"";
+
+    private final long startMillis = System.currentTimeMillis();
+    private final Map<String, long[]> before = Metrics.snapshot();
+    private final Map<String, Map<String, Long>> symbolsBefore = Metrics.symbolCounts();
+
+    public static RunSummary start() {
+        return new RunSummary();
+    }
+
+    private RunSummary() {
+    }
+
+    public long elapsedMillis() {
+        return System.currentTimeMillis() - startMillis;
+    }
+
+    public String finish(int symbols) {
+        Map<String, long[]> after = Metrics.snapshot();
+        Map<String, Object> stages = new LinkedHashMap<>();
+        Map<String, Object> histograms = new LinkedHashMap<>();
+        Map<String, Object> counters = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> series : after.entrySet()) {
+            long[] now = series.getValue();
+            long[] then = before.get(series.getKey());
+            long[] delta = new long[now.length];
+            for (int i = 0; i < now.length; i++) {
+                delta[i] = now[i] - (then == null ? 0 : then[i]);
+            }
+            if (now.length == 1) {
+                if (delta[0] != 0) {
+                    counters.put(series.getKey(), delta[0]);
+                }
+            } else if (series.getKey().startsWith(STAGE_PREFIX)) {
+                putIfObserved(stages, series.getKey().substring(STAGE_PREFIX.length(), series.getKey().length() - 2), delta);
+            } else {
+                putIfObserved(histograms, series.getKey(), delta);
+            }
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("start", Instant.ofEpochMilli(startMillis).toString());
+        summary.put("durationMs", elapsedMillis());
+        summary.put("symbols", symbols);
+        summary.put("stages", stages);
+        summary.put("histograms", histograms);
+        summary.put("counters", counters);
+        for (Map.Entry<String, Map<String, Long>> event : Metrics.symbolCounts().entrySet()) {
+            Map<String, Long> then = symbolsBefore.getOrDefault(event.getKey(), Collections.emptyMap());
+            Map<String, Long> counts = new TreeMap<>();
+            for (Map.Entry<String, Long> symbol : event.getValue().entrySet()) {
+                long delta = symbol.getValue() - then.getOrDefault(symbol.getKey(), 0L);
+                if (delta != 0) {
+                    counts.put(symbol.getKey(), delta);
+                }
+            }
+            summary.put(event.getKey(), counts);
+        }
+        summary.put("gauges", Metrics.gauges());
+        try {
+            return MAPPER.writeValueAsString(summary);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize the run summary", e);
+        }
+    }
+
+    private static void putIfObserved(Map<String, Object> into, String key, long[] delta) {
+        long count = 0;
+        for (int i = 0; i < delta.length - 1; i++) {
+            count += delta[i];
+        }
+        if (count == 0) {
+            return;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        stats.put("totalMs", delta[delta.length - 1] / 1e6);
+        stats.put("p50Ms", percentileMillis(delta, count, 0.5));
+        stats.put("p95Ms", percentileMillis(delta, count, 0.95));
+        stats.put("p99Ms", percentileMillis(delta, count, 0.99));
+        into.put(key, stats);
+    }
+
+    private static double percentileMillis(long[] delta, long count, double quantile) {
+        long rank = (long) Math.ceil(quantile * count);
+        long cumulative = 0;
+        for (int i = 0; i < Histogram.BUCKET_SECONDS.length; i++) {
+            cumulative += delta[i];
+            if (cumulative >= rank) {
+                return Histogram.BUCKET_SECONDS[i] * 1000;
+            }
+        }
+        return Histogram.BUCKET_SECONDS[Histogram.BUCKET_SECONDS.length - 1] * 1000;
+    }
+}
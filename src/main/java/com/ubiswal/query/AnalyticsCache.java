@@ -0,0 +1,243 @@
+package com.ubiswal.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.storage.AnalyticsSink;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/*
+ * The latest analytics and news items of every symbol, as the website reads them from dynamo, kept in process so
+ * that they can be served without a dynamo read.
+ *
+ * Items reach the cache through tee(), which passes them on to the real sink too. They are staged until the sink
+ * is flushed at the end of a run, then merged into a new snapshot that replaces the old one in a single write, so
+ * readers never see half a run. Snapshots hold every symbol's json already encoded, with its ETag, so a lookup is a
+ * map read and bulk responses are concatenations.
+ */
+public class AnalyticsCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // One encoded json object and its ETag.
+    public static final class Document {
+        final byte[] json;
+        final String eTag;
+
+        Document(byte[] json) {
+            this.json = json;
+            this.eTag = eTagOf(json);
+        }
+
+        Document(byte[] json, String eTag) {
+            this.json = json;
+            this.eTag = eTag;
+        }
+    }
+
+    private static final class Snapshot {
+        final Map<String, Map<String, Map<String, String>>> items; // symbol -> type -> attributes
+        final Map<String, Document> symbols;
+        final Document all;
+
+        Snapshot(Map<String, Map<String, Map<String, String>>> items, Map<String, Document> symbols, Document all) {
+            this.items = items;
+            this.symbols = symbols;
+            this.all = all;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), new Document("{}".getBytes(StandardCharsets.UTF_8)));
+    private Map<String, Map<String, Map<String, String>>> staged = new HashMap<>();
+    private Map<String, List<Predicate<String>>> deleted = new HashMap<>(); // applied to the snapshot before `staged`
+    private final Set<String> removed = new HashSet<>();
+    private final Object publishLock = new Object(); // orders publishes, staging goes on meanwhile
+
+    public AnalyticsCache() {
+        Metrics.gauge("analytics_query_cache_symbols", () -> snapshot.symbols.size());
+    }
+
+    // A sink that writes to `sink` and stages the items for the cache, publishing them when it is flushed.
+    public AnalyticsSink tee(AnalyticsSink sink) {
+        return new AnalyticsSink() {
+            @Override
+            public void put(Map<String, String> item) {
+                sink.put(item);
+                stage(item);
+            }
+
+            @Override
+            public void delete(String symbol, Predicate<String> types) {
+                sink.delete(symbol, types);
+                stageDelete(symbol, types);
+            }
+
+            @Override
+            public void flush() {
+                sink.flush();
+                publish();
+            }
+
+            @Override
+            public void close() {
+                sink.close();
+                publish();
+            }
+        };
+    }
+
+    // Drops the symbol from the next snapshot, e.g. once it is no longer configured.
+    public synchronized void remove(String symbol) {
+        staged.remove(symbol);
+        deleted.remove(symbol);
+        removed.add(symbol);
+    }
+
+    // The symbol's items as {"<type>": {"<attribute>": "<value>", ...}, ...}, or null if the symbol is unknown.
+    public Document get(String symbol) {
+        return snapshot.symbols.get(symbol);
+    }
+
+    // Every symbol's items, keyed by symbol.
+    public Document getAll() {
+        return snapshot.all;
+    }
+
+    // The known symbols among `symbols`, keyed by symbol, built from the encoded documents without re-encoding them.
+    public Document getAll(Collection<String> symbols) {
+        Map<String, Document> documents = snapshot.symbols;
+        StringBuilder eTags = new StringBuilder();
+        Map<String, Document> found = new TreeMap<>();
+        for (String symbol : symbols) {
+            Document document = documents.get(symbol);
+            if (document != null) {
+                found.put(symbol, document);
+            }
+        }
+        for (Map.Entry<String, Document> document : found.entrySet()) {
+            eTags.append(document.getKey()).append(document.getValue().eTag);
+        }
+        return new Document(join(found), eTagOf(eTags.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private synchronized void stage(Map<String, String> item) {
+        String symbol = item.get("symb");
+        String type = item.get("type");
+        if (symbol == null || type == null) {
+            return;
+        }
+        Map<String, String> attributes = new TreeMap<>(item);
+        attributes.remove("symb");
+        attributes.remove("type");
+        staged.computeIfAbsent(symbol, key -> new TreeMap<>()).put(type, Collections.unmodifiableMap(attributes));
+        removed.remove(symbol);
+    }
+
+    private synchronized void stageDelete(String symbol, Predicate<String> types) {
+        Map<String, Map<String, String>> items = staged.get(symbol);
+        if (items != null) {
+            items.keySet().removeIf(types);
+        }
+        deleted.computeIfAbsent(symbol, key -> new ArrayList<>()).add(types);
+    }
+
+    // Merges the staged items into a new snapshot. Only the symbols with new items are encoded again.
+    private void publish() {
+        Map<String, Map<String, Map<String, String>>> changes;
+        Map<String, List<Predicate<String>>> deletions;
+        Set<String> gone;
+        synchronized (this) {
+            if (staged.isEmpty() && deleted.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+            changes = staged;
+            deletions = deleted;
+            gone = new HashSet<>(removed);
+            staged = new HashMap<>();
+            deleted = new HashMap<>();
+            removed.clear();
+        }
+        synchronized (publishLock) {
+            Snapshot previous = snapshot;
+            Map<String, Map<String, Map<String, String>>> items = new TreeMap<>(previous.items);
+            Map<String, Document> symbols = new TreeMap<>(previous.symbols);
+            for (String symbol : gone) {
+                items.remove(symbol);
+                symbols.remove(symbol);
+            }
+            Set<String> changed = new HashSet<>(changes.keySet());
+            changed.addAll(deletions.keySet());
+            for (String symbol : changed) {
+                Map<String, Map<String, String>> merged = new TreeMap<>();
+                Map<String, Map<String, String>> before = items.get(symbol);
+                if (before != null) {
+                    merged.putAll(before);
+                }
+                for (Predicate<String> types : deletions.getOrDefault(symbol, Collections.emptyList())) {
+                    merged.keySet().removeIf(types);
+                }
+                merged.putAll(changes.getOrDefault(symbol, Collections.emptyMap()));
+                if (merged.isEmpty()) {
+                    items.remove(symbol);
+                    symbols.remove(symbol);
+                    continue;
+                }
+                items.put(symbol, Collections.unmodifiableMap(merged));
+                symbols.put(symbol, new Document(encode(merged)));
+            }
+            snapshot = new Snapshot(Collections.unmodifiableMap(items), Collections.unmodifiableMap(symbols), new Document(join(symbols)));
+        }
+    }
+
+    // {"A":<document of A>,"B":...}
+    private static byte[] join(Map<String, Document> documents) {
+        int size = 2;
+        for (Map.Entry<String, Document> document : documents.entrySet()) {
+            size += document.getKey().length() + 4 + document.getValue().json.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, Document> document : documents.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            byte[] key = encode(document.getKey());
+            out.write(key, 0, key.length);
+            out.write(':');
+            out.write(document.getValue().json, 0, document.getValue().json.length);
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(Object value) {
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            // maps of strings always encode
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Quoted hex of a 64 bit FNV-1a hash of the bytes.
+    private static String eTagOf(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return '"' + Long.toHexString(hash) + '"';
+    }
+}
@@ -0,0 +1,122 @@
+package com.ubiswal.query;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.ubiswal.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Serves the AnalyticsCache over http:
+ *   /analytics                  every symbol, {"<symbol>": {"<type>": {...}, ...}, ...}
+ *   /analytics?symbols=A,B,...  the listed symbols, same shape, unknown symbols are left out
+ *   /analytics/<symbol>         one symbol, {"<type>": {...}, ...}, 404 if it is unknown
+ * Responses carry an ETag, and a request whose If-None-Match matches it gets a 304 without a body.
+ */
+public class QueryServer {
+    private static final String PATH = "/analytics";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AnalyticsCache cache;
+
+    public QueryServer(int port, int threads, AnalyticsCache cache) throws IOException {
+        this.cache = cache;
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, this::handle);
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "query-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, null);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            AnalyticsCache.Document document;
+            if (path.equals(PATH) || path.equals(PATH + "/")) {
+                Set<String> symbols = symbols(exchange.getRequestURI().getRawQuery());
+                document = symbols == null ? cache.getAll() : cache.getAll(symbols);
+            } else if (path.startsWith(PATH + "/")) {
+                document = cache.get(path.substring(PATH.length() + 1));
+            } else {
+                document = null; // the context also gets e.g. /analyticsFOO
+            }
+            if (document == null) {
+                send(exchange, 404, null);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", document.eTag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), document.eTag)) {
+                send(exchange, 304, null);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            send(exchange, 200, "HEAD".equals(exchange.getRequestMethod()) ? null : document.json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // The symbols of the "symbols" parameter, or null if there is none.
+    private static Set<String> symbols(String query) throws IOException {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("symbols=")) {
+                Set<String> symbols = new LinkedHashSet<>();
+                for (String symbol : URLDecoder.decode(parameter.substring("symbols=".length()), "UTF-8").split(",")) {
+                    if (!symbol.trim().isEmpty()) {
+                        symbols.add(symbol.trim());
+                    }
+                }
+                return symbols;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        Metrics.counter("analytics_query_requests_total", "status", String.valueOf(status)).inc();
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
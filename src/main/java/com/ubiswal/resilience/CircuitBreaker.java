@@ -0,0 +1,117 @@
+package com.ubiswal.resilience;
+
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+
+/*
+ * Circuit breaker of one dependency. The outcomes of the last `window` calls are kept, and once at least half the
+ * window has been seen and `failureRate` of it failed, the breaker opens: calls are refused for `openMillis`, so a
+ * failing dependency is not kept busy and callers fail fast instead of waiting on it. After that a single trial call
+ * is let through. If it succeeds the breaker closes again, if it fails it stays open for another `openMillis`.
+ *
+ * Callers report the outcome of every call they were allowed to make that says something about the dependency. The
+ * state is exported as analytics_circuit_state{dependency} (0 closed, 1 open, 2 half open).
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final double failureRate;
+    private final long openMillis;
+    private final boolean[] failed; // ring of the last outcomes
+    private int recorded;
+    private int failures;
+    private int next;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private long trialStartedAt = -1; // -1 while no trial call is out
+    private Logger log = Logger.get(this.getClass());
+
+    public CircuitBreaker(String name, int window, double failureRate, long openMillis) {
+        this.name = name;
+        this.failureRate = failureRate;
+        this.openMillis = openMillis;
+        this.failed = new boolean[Math.max(2, window)];
+        Metrics.gauge("analytics_circuit_state", () -> getState().ordinal(), "dependency", name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // False if the call must not be made. A true in the open state makes the caller the trial call.
+    public synchronized boolean allowRequest() {
+        long now = System.currentTimeMillis();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        // a trial whose outcome was never reported does not keep the breaker shut forever
+        boolean trialOut = trialStartedAt >= 0 && now - trialStartedAt < openMillis;
+        if (now - openedAt >= openMillis && !trialOut) {
+            state = State.HALF_OPEN;
+            trialStartedAt = now;
+            return true;
+        }
+        Metrics.counter("analytics_circuit_rejected_total", "dependency", name).inc();
+        return false;
+    }
+
+    // Outcomes reported while open come from calls allowed before it opened, and are ignored.
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.info(String.format("Closing the %s circuit, the trial call succeeded", name));
+            state = State.CLOSED;
+            reset();
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        record(true);
+        if (recorded >= failed.length / 2 && failures >= failureRate * recorded) {
+            log.warning(String.format("Opening the %s circuit, %d of the last %d calls failed", name, failures, recorded));
+            open();
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recorded == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        failures += failure ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        trialStartedAt = -1;
+        reset();
+        Metrics.counter("analytics_circuit_opened_total", "dependency", name).inc();
+    }
+
+    private void reset() {
+        recorded = 0;
+        failures = 0;
+        next = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package com.ubiswal.resilience;
+
+import java.io.IOException;
+
+// Thrown instead of calling a dependency whose circuit breaker is open.
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String dependency) {
+        super(String.format("The %s circuit is open", dependency));
+    }
+}
@@ -0,0 +1,60 @@
+package com.ubiswal.resilience;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Runs an action, e.g. interrupting a thread, once a piece of work has taken longer than it may, unless the work
+ * cancels the deadline first. cancel() and the expiry exclude each other, so once cancel() returns true the action
+ * has not run and never will.
+ */
+public final class Deadline {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Deadline NONE = new Deadline();
+
+    private ScheduledFuture<?> timer;
+    private boolean done;
+    private boolean expired;
+
+    private Deadline() {
+    }
+
+    // A millis of 0 or less never expires.
+    public static Deadline start(long millis, Runnable onExpiry) {
+        if (millis <= 0) {
+            return NONE;
+        }
+        Deadline deadline = new Deadline();
+        synchronized (deadline) {
+            deadline.timer = TIMER.schedule(() -> deadline.expire(onExpiry), millis, TimeUnit.MILLISECONDS);
+        }
+        return deadline;
+    }
+
+    // True if the work finished in time, false if the deadline had already expired.
+    public synchronized boolean cancel() {
+        if (this == NONE) {
+            return true;
+        }
+        if (!done) {
+            done = true;
+            timer.cancel(false);
+        }
+        return !expired;
+    }
+
+    private synchronized void expire(Runnable onExpiry) {
+        if (done) {
+            return;
+        }
+        done = true;
+        expired = true;
+        onExpiry.run();
+    }
+}
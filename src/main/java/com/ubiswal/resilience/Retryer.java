@@ -0,0 +1,123 @@
+package com.ubiswal.resilience;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.retry.RetryUtils;
+import com.ubiswal.metrics.Metrics;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Calls a dependency through its circuit breaker, retrying failures that may go away with full jitter exponential
+ * backoff: a random wait between 0 and min(maxMillis, baseMillis * 2^attempt).
+ *
+ * Retries are adaptive. Each one spends a token from a budget that every successful call refills by
+ * TOKENS_PER_SUCCESS, up to MAX_TOKENS, so while most calls fail, e.g. while the dependency is throttling, calls
+ * stop being retried instead of multiplying its load, and go back to being retried once it recovers. Combined with
+ * the breaker, a slow or failing dependency costs a bounded number of calls and waits per symbol.
+ *
+ * An interrupted wait, e.g. at a symbol's deadline, ends the retries.
+ */
+public class Retryer {
+    private static final double MAX_TOKENS = 20;
+    private static final double TOKENS_PER_SUCCESS = 0.2;
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private final CircuitBreaker breaker;
+    private final int attempts;
+    private final long baseMillis;
+    private final long maxMillis;
+    private double tokens = MAX_TOKENS;
+
+    public Retryer(CircuitBreaker breaker, int attempts, long baseMillis, long maxMillis) {
+        this.breaker = breaker;
+        this.attempts = Math.max(1, attempts);
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    // Runs the call, retrying it while it fails with a retryable exception, and rethrows the last failure.
+    public <T> T call(Call<T> call) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            if (!breaker.allowRequest()) {
+                throw new CircuitOpenException(breaker.getName());
+            }
+            try {
+                T result = call.call();
+                breaker.onSuccess();
+                refill();
+                return result;
+            } catch (IOException | RuntimeException e) {
+                if (!isRetryable(e)) {
+                    if (isAnswer(e)) {
+                        // the dependency answered, e.g. with a missing key, so it counts as up
+                        breaker.onSuccess();
+                    }
+                    // other failures, e.g. a bug in the call, say nothing about the dependency
+                    throw e;
+                }
+                breaker.onFailure();
+                if (attempt + 1 >= attempts || !spendToken()) {
+                    throw e;
+                }
+            }
+            Metrics.counter("analytics_retries_total", "dependency", breaker.getName()).inc();
+            try {
+                Thread.sleep(backoff(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted while retrying a %s call", breaker.getName()));
+            }
+        }
+    }
+
+    // Throttling, server errors and network trouble may go away, missing keys, bad requests and interrupts do not.
+    static boolean isRetryable(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException service = (AmazonServiceException) e;
+            return service.getStatusCode() >= 500 || RetryUtils.isThrottlingException((SdkBaseException) service);
+        }
+        if (e instanceof AbortedException || e instanceof InterruptedIOException || e instanceof CircuitOpenException
+                || e instanceof FileNotFoundException || e instanceof NoSuchFileException) {
+            return false;
+        }
+        return e instanceof SdkClientException || e instanceof IOException;
+    }
+
+    // A refusal from the dependency itself, such as a missing key or a bad request.
+    private static boolean isAnswer(Exception e) {
+        return e instanceof AmazonServiceException || e instanceof FileNotFoundException || e instanceof NoSuchFileException;
+    }
+
+    private long backoff(int attempt) {
+        long cap = Math.min(maxMillis, baseMillis << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private synchronized boolean spendToken() {
+        if (tokens < 1) {
+            Metrics.counter("analytics_retries_denied_total", "dependency", breaker.getName()).inc();
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    private synchronized void refill() {
+        tokens = Math.min(MAX_TOKENS, tokens + TOKENS_PER_SUCCESS);
+    }
+}
@@ -0,0 +1,118 @@
+package com.ubiswal.scheduler;
+
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Runs jobs at wall clock aligned times, e.g. every hour at minute 5, on threads of their own:
+ *   - a job never overlaps itself: a trigger that arrives while the previous run is still going is skipped,
+ *   - a run that exceeds its deadline is interrupted,
+ *   - an exception thrown by a run is logged and does not affect later runs.
+ * Besides the schedule, a job can be triggered early, e.g. as soon as the crawler writes a new hour.
+ */
+public class JobScheduler {
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private Logger log = Logger.get(this.getClass());
+
+    public class Job {
+        private final String name;
+        private final Runnable task;
+        private final long periodMillis;
+        private final long offsetMillis;
+        private final long deadlineMillis;
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Job(String name, Runnable task, long periodMillis, long offsetMillis, long deadlineMillis) {
+            this.name = name;
+            this.task = task;
+            this.periodMillis = periodMillis;
+            this.offsetMillis = offsetMillis;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        // Starts a run now unless one is already going.
+        public void trigger(String reason) {
+            if (!running.compareAndSet(false, true)) {
+                log.warning(String.format("Skipping %s run (%s), the previous run is still going", name, reason));
+                Metrics.counter("analytics_scheduler_skipped_total", "job", name).inc();
+                return;
+            }
+            log.info(String.format("Starting %s run (%s)", name, reason));
+            Future<?> run;
+            try {
+                run = workers.submit(this::runOnce);
+            } catch (RuntimeException e) {
+                running.set(false);
+                throw e;
+            }
+            if (deadlineMillis > 0) {
+                timer.schedule(() -> enforceDeadline(run), deadlineMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void runOnce() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error(e, String.format("The %s run failed", name));
+                Metrics.counter("analytics_scheduler_failures_total", "job", name).inc();
+            } finally {
+                running.set(false);
+            }
+        }
+
+        // The guard is only released once the interrupted run has actually returned.
+        private void enforceDeadline(Future<?> run) {
+            if (!run.isDone()) {
+                log.error(String.format("The %s run exceeded its deadline of %d ms, interrupting it", name, deadlineMillis));
+                Metrics.counter("analytics_scheduler_deadline_exceeded_total", "job", name).inc();
+                run.cancel(true);
+            }
+        }
+
+        // The next multiple of the period, shifted by the offset, strictly after now.
+        private long millisUntilNextRun() {
+            long now = System.currentTimeMillis();
+            long next = Math.floorDiv(now - offsetMillis, periodMillis) * periodMillis + periodMillis + offsetMillis;
+            return next - now;
+        }
+
+        // Re-computed after every tick, so the schedule does not drift from the wall clock.
+        private void scheduleNext() {
+            timer.schedule(() -> {
+                try {
+                    trigger("scheduled");
+                } finally {
+                    scheduleNext();
+                }
+            }, millisUntilNextRun(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Runs `task` every `periodMillis`, aligned to the epoch plus `offsetMillis` (UTC), and once right away if
+     * `runNow`. A run still going after `deadlineMillis` is interrupted; 0 means no deadline.
+     */
+    public Job schedule(String name, Runnable task, long periodMillis, long offsetMillis, long deadlineMillis, boolean runNow) {
+        Job job = new Job(name, task, periodMillis, Math.floorMod(offsetMillis, periodMillis), deadlineMillis);
+        if (runNow) {
+            timer.execute(() -> job.trigger("startup"));
+        }
+        job.scheduleNext();
+        log.info(String.format("Scheduled %s every %d ms at offset %d ms", name, periodMillis, job.offsetMillis));
+        return job;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,202 @@
+package com.ubiswal.scheduler;
+
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Splits the symbol list between worker processes. Symbols are hashed into `shardCount` shards and every shard has
+ * a lease file, <directory>/shard-<n>.lease, holding "<owner>\n<expires at millis>\n". The file is locked while a
+ * worker reads and updates it, so two workers never both take the same shard.
+ *
+ * Every worker also keeps a heartbeat file, <directory>/workers/<owner>, with the time it expires. On every acquire
+ * a worker renews its heartbeat and its leases and takes free or expired leases, up to a fair share: the shard count
+ * divided by the number of live workers. A worker above its share releases the extra shards, so a new worker gets
+ * its part on the next run, and the shards of a dead worker are picked up once its leases expire.
+ * Leases must outlive a run, otherwise a slow worker can lose a shard while it is still analyzing it.
+ */
+public class ShardLeases {
+    private static final class Lease {
+        final String owner;
+        final long expiresAt;
+
+        Lease(String owner, long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isLive(long now) {
+            return owner != null && expiresAt > now;
+        }
+    }
+
+    private final Path directory;
+    private final int shardCount;
+    private final int maxShards;
+    private final long leaseMillis;
+    private final String owner;
+    private final Set<Integer> owned = new TreeSet<>();
+    private Logger log = Logger.get(this.getClass());
+
+    // maxShards caps the fair share, 0 for no cap.
+    public ShardLeases(Path directory, int shardCount, int maxShards, long leaseMillis) throws IOException {
+        this.directory = directory;
+        this.shardCount = shardCount;
+        this.maxShards = maxShards;
+        this.leaseMillis = leaseMillis;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName(); // pid@hostname
+        Files.createDirectories(directory);
+        Metrics.gauge("analytics_owned_shards", this::ownedCount);
+    }
+
+    public static int shardOf(String symbol, int shardCount) {
+        return Math.floorMod(symbol.hashCode(), shardCount);
+    }
+
+    // Renews and takes leases, then returns the symbols of the shards this worker owns.
+    public synchronized List<String> acquire(List<String> symbols) throws IOException {
+        long now = System.currentTimeMillis();
+        int workers = liveWorkers(now);
+        int fairShare = (shardCount + workers - 1) / workers;
+        int share = maxShards > 0 ? Math.min(fairShare, maxShards) : fairShare;
+
+        // renew what we hold first, so that our shards stay with us
+        for (int shard : new ArrayList<>(owned)) {
+            if (owned.size() > share || !update(shard, true, now)) {
+                release(shard);
+            }
+        }
+        for (int shard = 0; shard < shardCount && owned.size() < share; shard++) {
+            if (!owned.contains(shard) && update(shard, false, now)) {
+                owned.add(shard);
+            }
+        }
+        log.info(String.format("Own shards %s of %d, %d workers", owned, shardCount, workers));
+
+        List<String> mine = new ArrayList<>();
+        for (String symbol : symbols) {
+            if (owned.contains(shardOf(symbol, shardCount))) {
+                mine.add(symbol);
+            }
+        }
+        return mine;
+    }
+
+    public synchronized void releaseAll() {
+        for (int shard : new ArrayList<>(owned)) {
+            release(shard);
+        }
+        try {
+            Files.deleteIfExists(workersDirectory().resolve(owner));
+        } catch (IOException e) {
+            log.error(e, "Failed to remove the worker heartbeat, it is ignored once it expires");
+        }
+    }
+
+    // Renews our heartbeat, drops expired ones and counts the rest, including ours.
+    private int liveWorkers(long now) throws IOException {
+        Path workers = workersDirectory();
+        Files.createDirectories(workers);
+        Files.write(workers.resolve(owner), Long.toString(now + leaseMillis).getBytes(StandardCharsets.UTF_8));
+        int live = 0;
+        try (DirectoryStream<Path> heartbeats = Files.newDirectoryStream(workers)) {
+            for (Path heartbeat : heartbeats) {
+                long expiresAt;
+                try {
+                    expiresAt = Long.parseLong(new String(Files.readAllBytes(heartbeat), StandardCharsets.UTF_8).trim());
+                } catch (NumberFormatException | IOException e) {
+                    // being written or already removed by its worker
+                    continue;
+                }
+                if (expiresAt > now) {
+                    live++;
+                } else {
+                    Files.deleteIfExists(heartbeat);
+                }
+            }
+        }
+        return Math.max(live, 1);
+    }
+
+    private Path workersDirectory() {
+        return directory.resolve("workers");
+    }
+
+    private synchronized int ownedCount() {
+        return owned.size();
+    }
+
+    // Extends our lease if `renew`, or takes a free or expired one otherwise. Returns false if someone else has it.
+    private boolean update(int shard, boolean renew, long now) throws IOException {
+        try (FileChannel channel = open(shard)) {
+            FileLock lock = channel.lock();
+            try {
+                Lease lease = parse(channel);
+                boolean ours = owner.equals(lease.owner);
+                if (renew ? !ours : lease.isLive(now) && !ours) {
+                    return false;
+                }
+                write(channel, new Lease(owner, now + leaseMillis));
+                return true;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private void release(int shard) {
+        owned.remove(shard);
+        try (FileChannel channel = open(shard)) {
+            FileLock lock = channel.lock();
+            try {
+                if (owner.equals(parse(channel).owner)) {
+                    write(channel, new Lease(null, 0));
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            log.error(e, String.format("Failed to release shard %d, it is free again once the lease expires", shard));
+        }
+    }
+
+    private FileChannel open(int shard) throws IOException {
+        return FileChannel.open(directory.resolve(String.format("shard-%d.lease", shard)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static Lease parse(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 4096));
+        channel.read(buffer, 0);
+        String[] lines = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2 || lines[0].isEmpty()) {
+            return new Lease(null, 0);
+        }
+        try {
+            return new Lease(lines[0], Long.parseLong(lines[1].trim()));
+        } catch (NumberFormatException e) {
+            return new Lease(null, 0);
+        }
+    }
+
+    private static void write(FileChannel channel, Lease lease) throws IOException {
+        String text = lease.owner == null ? "" : String.format("%s\n%d\n", lease.owner, lease.expiresAt);
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), 0);
+        channel.force(true);
+    }
+}
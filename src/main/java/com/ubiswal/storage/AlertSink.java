@@ -0,0 +1,17 @@
+package com.ubiswal.storage;
+
+import java.util.Map;
+
+// Receives the alerts raised by the alert rules, with their "symb", "rule", "metric", "time", "value" and "threshold". Alerts may be buffered until flush().
+public interface AlertSink {
+    void put(Map<String, String> alert);
+
+    // False if an alert replaces the previous one of its rule, so alerts of older bars must not be put after newer ones.
+    default boolean keepsHistory() {
+        return true;
+    }
+
+    void flush();
+
+    void close();
+}
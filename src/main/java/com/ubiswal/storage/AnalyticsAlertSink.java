@@ -0,0 +1,42 @@
+package com.ubiswal.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Publishes the latest alert of every rule next to the other analytics, as a "9_alert_<rule>" item of the symbol with
+ * the value "<time>;<value>;<threshold>". An alert replaces the previous one of its rule, for a full history use
+ * JsonLinesAlertSink.
+ */
+public class AnalyticsAlertSink implements AlertSink {
+    private static final String TYPE_PREFIX = "9_alert_";
+
+    private final AnalyticsSink analyticsSink;
+
+    public AnalyticsAlertSink(AnalyticsSink analyticsSink) {
+        this.analyticsSink = analyticsSink;
+    }
+
+    @Override
+    public void put(Map<String, String> alert) {
+        Map<String, String> item = new HashMap<>();
+        item.put("symb", alert.get("symb"));
+        item.put("type", TYPE_PREFIX + alert.get("rule"));
+        item.put("value", String.format("%s;%s;%s", alert.get("time"), alert.get("value"), alert.get("threshold")));
+        analyticsSink.put(item);
+    }
+
+    @Override
+    public boolean keepsHistory() {
+        return false;
+    }
+
+    // The analytics sink is flushed and closed by its owner.
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,17 @@
+package com.ubiswal.storage;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+// Receives analytics items, keyed by their "symb" and "type" attributes. Items may be buffered until flush().
+public interface AnalyticsSink {
+    void put(Map<String, String> item);
+
+    // Removes the symbol's items whose type matches, e.g. analytics that can no longer be computed. An item put after
+    // the delete is kept.
+    void delete(String symbol, Predicate<String> types);
+
+    void flush();
+
+    void close();
+}
@@ -0,0 +1,258 @@
+package com.ubiswal.storage;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Metrics;
+import com.ubiswal.resilience.CircuitBreaker;
+import com.ubiswal.resilience.Retryer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/*
+ * Collects analytics items from all analyzers and writes them with BatchWriteItem, 25 items per call.
+ * Full batches are flushed in the background on one of `flushThreads` lanes; flush() sends the remainder and waits
+ * for everything queued so far. Items dynamo could not process are retried with jittered exponential backoff.
+ * Each symb/type key always goes to the same lane, and a lane writes its batches one after the other, retries
+ * included, so two writes of one key land in the order they were made, e.g. the alerts of one rule or the
+ * partitions of a backfill. At most QUEUED_BATCHES_PER_THREAD batches per lane wait to be written, after that put()
+ * blocks, so analyzers producing faster than dynamo accepts are slowed down instead of piling up items in memory.
+ * Calls go through the dynamo circuit breaker. While it is open a batch waits, without using up its attempts, until
+ * the breaker lets a trial call through, so an unavailable table stalls the flush threads and, through the queue, the
+ * analyzers instead of dropping items.
+ */
+public class DynamoBatchWriter implements AnalyticsSink {
+    static final int MAX_BATCH_SIZE = 25;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MS = 50;
+    private static final long MAX_BACKOFF_MS = 5000;
+    private static final int QUEUED_BATCHES_PER_THREAD = 8;
+    private static final long BREAKER_POLL_MS = 1000;
+
+    private final AmazonDynamoDB dynamoDBClient;
+    private final String tableName;
+    private final CircuitBreaker breaker;
+    private final Retryer queries;
+    private final Lane[] lanes;
+    private final Queue<Future<?>> inFlight = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedBatches = new AtomicInteger();
+    private Logger log = Logger.get(this.getClass());
+
+    public DynamoBatchWriter(AmazonDynamoDB dynamoDBClient, String tableName, int flushThreads, CircuitBreaker breaker) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.tableName = tableName;
+        this.breaker = breaker;
+        this.queries = new Retryer(breaker, MAX_ATTEMPTS, BASE_BACKOFF_MS, MAX_BACKOFF_MS);
+        this.lanes = new Lane[Math.max(1, flushThreads)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        Metrics.gauge("analytics_queue_depth", queuedBatches::get, "queue", "dynamo");
+    }
+
+    @Override
+    public void put(Map<String, String> item) {
+        String key = String.format("%s/%s", item.get("symb"), item.get("type"));
+        Map<String, AttributeValue> attributes = new HashMap<>();
+        for (Map.Entry<String, String> attribute : item.entrySet()) {
+            attributes.put(attribute.getKey(), new AttributeValue().withS(attribute.getValue()));
+        }
+        enqueue(key, new WriteRequest().withPutRequest(new PutRequest().withItem(attributes)));
+    }
+
+    // Looks up the symbol's types with a query and queues a delete for each match. The deletes share the puts' keys,
+    // so whichever of a put and a delete of the same item comes last wins. The query is retried through the breaker,
+    // and fails with an SdkClientException if dynamo stays unavailable.
+    @Override
+    public void delete(String symbol, Predicate<String> types) {
+        List<String> matching = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        do {
+            QueryRequest request = new QueryRequest()
+                    .withTableName(tableName)
+                    .withKeyConditionExpression("symb = :symb")
+                    .withProjectionExpression("#type")
+                    .withExpressionAttributeNames(Collections.singletonMap("#type", "type"))
+                    .withExpressionAttributeValues(Collections.singletonMap(":symb", new AttributeValue().withS(symbol)))
+                    .withExclusiveStartKey(startKey);
+            QueryResult result;
+            try {
+                result = queries.call(() -> dynamoDBClient.query(request));
+            } catch (IOException e) {
+                // the breaker is open or the retries were interrupted
+                throw new SdkClientException(String.format("Could not look up the items of %s to delete", symbol), e);
+            }
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                String type = item.get("type").getS();
+                if (types.test(type)) {
+                    matching.add(type);
+                }
+            }
+            startKey = result.getLastEvaluatedKey();
+        } while (startKey != null && !startKey.isEmpty());
+        for (String type : matching) {
+            Map<String, AttributeValue> key = new HashMap<>();
+            key.put("symb", new AttributeValue().withS(symbol));
+            key.put("type", new AttributeValue().withS(type));
+            enqueue(String.format("%s/%s", symbol, type), new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(key)));
+        }
+        Metrics.counter("analytics_deleted_items_total").add(matching.size());
+    }
+
+    private void enqueue(String key, WriteRequest request) {
+        Lane lane = lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length];
+        synchronized (lane) {
+            lane.pending.remove(key); // a re-queued key moves to the end
+            lane.pending.put(key, request);
+            if (lane.pending.size() >= MAX_BATCH_SIZE) {
+                // submitted under the lock, so the lane's batches are queued in the order they were filled
+                submit(lane, lane.takePending());
+            }
+        }
+    }
+
+    // Sends whatever is buffered and blocks until every batch queued so far has been written or given up on.
+    @Override
+    public void flush() {
+        for (Lane lane : lanes) {
+            synchronized (lane) {
+                if (!lane.pending.isEmpty()) {
+                    submit(lane, lane.takePending());
+                }
+            }
+        }
+        Future<?> future;
+        while ((future = inFlight.poll()) != null) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error(e.getCause(), "Failed to write a batch of analytics to dynamo");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        for (Lane lane : lanes) {
+            lane.writer.shutdown();
+        }
+    }
+
+    // Blocks while the lane already has QUEUED_BATCHES_PER_THREAD batches waiting.
+    private void submit(Lane lane, List<WriteRequest> batch) {
+        lane.slots.acquireUninterruptibly();
+        queuedBatches.incrementAndGet();
+        inFlight.add(lane.writer.submit(() -> {
+            try {
+                Metrics.time("dynamo_write", () -> writeBatch(batch));
+            } finally {
+                queuedBatches.decrementAndGet();
+                lane.slots.release();
+            }
+            return null;
+        }));
+    }
+
+    private void writeBatch(List<WriteRequest> batch) throws InterruptedException {
+        Map<String, List<WriteRequest>> requestItems = Collections.singletonMap(tableName, batch);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                Metrics.counter("analytics_dynamo_retries_total").inc();
+                Thread.sleep(backoff(attempt));
+            }
+            awaitBreaker();
+            try {
+                BatchWriteItemResult result = dynamoDBClient.batchWriteItem(new BatchWriteItemRequest().withRequestItems(requestItems));
+                breaker.onSuccess();
+                Map<String, List<WriteRequest>> unprocessed = result.getUnprocessedItems();
+                if (unprocessed == null || unprocessed.isEmpty()) {
+                    return;
+                }
+                requestItems = unprocessed;
+            } catch (ProvisionedThroughputExceededException e) {
+                breaker.onFailure();
+                Metrics.counter("analytics_dynamo_throttled_total").inc();
+                log.warning(String.format("Dynamo throttled a batch of %d items, attempt %d", count(requestItems), attempt + 1));
+            } catch (AmazonServiceException e) {
+                if (e.getStatusCode() >= 500) {
+                    breaker.onFailure();
+                    log.warning(String.format("Dynamo failed a batch of %d items, attempt %d: %s", count(requestItems), attempt + 1, e.getErrorMessage()));
+                    continue;
+                }
+                breaker.onSuccess();
+                log.error(e.getErrorMessage());
+                Metrics.counter("analytics_dynamo_failed_items_total").add(count(requestItems));
+                return;
+            } catch (SdkClientException e) {
+                breaker.onFailure();
+                log.warning(String.format("Could not reach dynamo for a batch of %d items, attempt %d: %s", count(requestItems), attempt + 1, e.getMessage()));
+            }
+        }
+        log.error(String.format("Gave up on %d items after %d attempts", count(requestItems), MAX_ATTEMPTS));
+        Metrics.counter("analytics_dynamo_failed_items_total").add(count(requestItems));
+    }
+
+    // Blocks while the breaker refuses calls, until this thread gets to make the trial call or it closes.
+    private void awaitBreaker() throws InterruptedException {
+        while (!breaker.allowRequest()) {
+            Thread.sleep(BREAKER_POLL_MS);
+        }
+    }
+
+    // Full jitter: a random wait between 0 and an exponentially growing cap.
+    private static long backoff(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    // One flush thread and the items waiting for it, keyed by symb and type as a batch may not contain a key twice.
+    private static final class Lane {
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        final Semaphore slots = new Semaphore(QUEUED_BATCHES_PER_THREAD);
+        Map<String, WriteRequest> pending = new LinkedHashMap<>();
+
+        List<WriteRequest> takePending() {
+            List<WriteRequest> batch = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+            return batch;
+        }
+    }
+
+    private static int count(Map<String, List<WriteRequest>> requestItems) {
+        int count = 0;
+        for (List<WriteRequest> requests : requestItems.values()) {
+            count += requests.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,8 @@
+package com.ubiswal.storage;
+
+import java.io.IOException;
+
+// Where rendered charts are published for the website.
+public interface ImageSink {
+    void put(String key, byte[] image, String contentType) throws IOException;
+}
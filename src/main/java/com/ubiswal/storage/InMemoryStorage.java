@@ -0,0 +1,127 @@
+package com.ubiswal.storage;
+
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// Keeps inputs, analytics and images in process. Used for load tests, profiling and benchmarks.
+public class InMemoryStorage implements InputSource, AnalyticsSink, ImageSink {
+    private static final class StoredObject {
+        final byte[] content;
+        final String eTag;
+        final Date lastModified;
+
+        StoredObject(byte[] content, String eTag) {
+            this.content = content;
+            this.eTag = eTag;
+            this.lastModified = new Date();
+        }
+    }
+
+    private final ConcurrentMap<String, StoredObject> inputs = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    @Getter
+    private final ConcurrentMap<String, Map<String, String>> analytics = new ConcurrentHashMap<>();
+    @Getter
+    private final ConcurrentMap<String, byte[]> images = new ConcurrentHashMap<>();
+
+    public void putInput(String key, byte[] content) {
+        inputs.put(key, new StoredObject(content, Long.toHexString(versions.incrementAndGet())));
+    }
+
+    @Override
+    public InputObject get(String key, String eTag) throws FileNotFoundException {
+        StoredObject stored = inputs.get(key);
+        if (stored == null) {
+            throw new FileNotFoundException(String.format("No input with key %s", key));
+        }
+        if (stored.eTag.equals(eTag)) {
+            return null;
+        }
+        return new InputObject() {
+            private final InputStream content = new ByteArrayInputStream(stored.content);
+
+            @Override
+            public InputStream getContent() {
+                return content;
+            }
+
+            @Override
+            public String getETag() {
+                return stored.eTag;
+            }
+
+            @Override
+            public Date getLastModified() {
+                return stored.lastModified;
+            }
+
+            @Override
+            public void abort() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public List<String> listCommonPrefixes(String prefix, String delimiter) {
+        TreeSet<String> prefixes = new TreeSet<>();
+        for (String key : inputs.keySet()) {
+            if (key.startsWith(prefix)) {
+                int end = key.indexOf(delimiter, prefix.length());
+                if (end >= 0) {
+                    prefixes.add(key.substring(0, end + delimiter.length()));
+                }
+            }
+        }
+        return new ArrayList<>(prefixes);
+    }
+
+    @Override
+    public boolean hasKeys(String prefix) {
+        for (String key : inputs.keySet()) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void put(Map<String, String> item) {
+        analytics.put(String.format("%s/%s", item.get("symb"), item.get("type")), new HashMap<>(item));
+    }
+
+    @Override
+    public void delete(String symbol, Predicate<String> types) {
+        analytics.values().removeIf(item -> symbol.equals(item.get("symb")) && types.test(item.get("type")));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void put(String key, byte[] image, String contentType) {
+        images.put(key, image);
+    }
+}
@@ -0,0 +1,17 @@
+package com.ubiswal.storage;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Date;
+
+// One object read from an InputSource. Closing it after reading to the end releases it for reuse.
+public interface InputObject extends Closeable {
+    InputStream getContent();
+
+    String getETag();
+
+    Date getLastModified();
+
+    // Release the object without reading the rest of its content.
+    void abort();
+}
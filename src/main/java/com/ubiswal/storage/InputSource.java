@@ -0,0 +1,15 @@
+package com.ubiswal.storage;
+
+import java.io.IOException;
+import java.util.List;
+
+// Where the crawler output and config.json are read from. Keys look like <date>/<hour>/<symbol>/stock.json.
+public interface InputSource {
+    // Returns null when eTag is not null and the object still has that ETag.
+    InputObject get(String key, String eTag) throws IOException;
+
+    // The distinct key prefixes under `prefix` up to and including the next `delimiter`, like an S3 delimiter listing.
+    List<String> listCommonPrefixes(String prefix, String delimiter) throws IOException;
+
+    boolean hasKeys(String prefix) throws IOException;
+}
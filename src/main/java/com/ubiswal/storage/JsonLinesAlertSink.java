@@ -0,0 +1,55 @@
+package com.ubiswal.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.twitter.logging.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+// Appends every alert to a file as one json object per line, e.g. for a log shipper to pick up.
+public class JsonLinesAlertSink implements AlertSink {
+    private static final ObjectWriter ALERT_WRITER = new ObjectMapper().writer();
+
+    private final Path file;
+    private final Writer out;
+    private Logger log = Logger.get(this.getClass());
+
+    public JsonLinesAlertSink(Path file) throws IOException {
+        this.file = file;
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void put(Map<String, String> alert) {
+        try {
+            out.write(ALERT_WRITER.writeValueAsString(alert));
+            out.write('\n');
+        } catch (IOException e) {
+            log.error(e, String.format("Failed to write an alert to %s", file));
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.error(e, String.format("Failed to flush the alerts to %s", file));
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.error(e, String.format("Failed to close %s", file));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ubiswal.storage;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.ubiswal.metrics.Metrics;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+// Parses json objects straight off an InputSource stream, without staging them on disk.
+public final class JsonObjects {
+    // The stream is closed by us, not by jackson, so that it can be drained first.
+    private static final ObjectMapper MAPPER = new ObjectMapper().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    // A parsed object together with the version of the stored object it was parsed from.
+    public static final class Versioned<T> {
+        @Getter
+        private final T value;
+        @Getter
+        private final String eTag;
+        @Getter
+        private final Date lastModified;
+
+        public Versioned(T value, String eTag, Date lastModified) {
+            this.value = value;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private JsonObjects() {
+    }
+
+    // Readers are immutable and thread safe, create one per type and share it.
+    public static ObjectReader readerFor(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    public static <T> T read(InputSource source, String key, ObjectReader reader) throws IOException {
+        return parse(fetch(source, key, null), reader);
+    }
+
+    // Conditional read: returns null without downloading anything when the object still has the given ETag.
+    public static <T> Versioned<T> readIfChanged(InputSource source, String key, String eTag, ObjectReader reader) throws IOException {
+        InputObject object = fetch(source, key, eTag);
+        if (object == null) {
+            return null;
+        }
+        String currentETag = object.getETag();
+        Date lastModified = object.getLastModified();
+        T value = parse(object, reader);
+        return new Versioned<>(value, currentETag, lastModified);
+    }
+
+    /*
+     * Conditional read of the whole body into memory, for callers that parse it later on another thread, so that
+     * the download can overlap with parsing other objects. Returns null when the object still has the given ETag.
+     */
+    public static Versioned<byte[]> fetchIfChanged(InputSource source, String key, String eTag) throws IOException {
+        return Metrics.time("fetch", () -> {
+            InputObject object = source.get(key, eTag);
+            if (object == null) {
+                return null;
+            }
+            try {
+                ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+                byte[] buffer = new byte[8192];
+                int read;
+                InputStream inputStream = object.getContent();
+                while ((read = inputStream.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+                return new Versioned<>(body.toByteArray(), object.getETag(), object.getLastModified());
+            } catch (IOException | RuntimeException e) {
+                object.abort();
+                throw e;
+            } finally {
+                object.close();
+            }
+        });
+    }
+
+    // Parses a body read by fetchIfChanged, keeping its version.
+    public static <T> Versioned<T> parse(Versioned<byte[]> body, ObjectReader reader) throws IOException {
+        T value = Metrics.time("parse", () -> reader.readValue(body.getValue()));
+        return new Versioned<>(value, body.getETag(), body.getLastModified());
+    }
+
+    // Time to the response headers only, the body is streamed by parse.
+    private static InputObject fetch(InputSource source, String key, String eTag) throws IOException {
+        return Metrics.time("fetch", () -> source.get(key, eTag));
+    }
+
+    private static <T> T parse(InputObject object, ObjectReader reader) throws IOException {
+        InputStream inputStream = object.getContent();
+        try {
+            return Metrics.time("parse", () -> {
+                T value = reader.readValue(inputStream);
+                drain(inputStream);
+                return value;
+            });
+        } catch (IOException | RuntimeException e) {
+            // Do not read the rest of a broken body, just drop it.
+            object.abort();
+            throw e;
+        } finally {
+            object.close();
+        }
+    }
+
+    // Reading to EOF lets the http client return the connection to its pool instead of aborting it.
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[512];
+        while (inputStream.read(buffer) != -1) {
+            // discard trailing whitespace
+        }
+    }
+}
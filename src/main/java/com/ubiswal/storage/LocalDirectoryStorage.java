@@ -0,0 +1,185 @@
+package com.ubiswal.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.twitter.logging.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/*
+ * A directory laid out like the crawler bucket (<root>/<date>/<hour>/<symbol>/stock.json), for replaying a
+ * recorded day on one box. Inputs are memory mapped instead of read through streams. Analytics are kept in memory
+ * and written to <root>/analytics.json on flush; images go to <root>/images/.
+ */
+public class LocalDirectoryStorage implements InputSource, AnalyticsSink, ImageSink {
+    private static final ObjectWriter ANALYTICS_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    private final Path root;
+    private final ConcurrentMap<String, Map<String, String>> analytics = new ConcurrentHashMap<>();
+    private Logger log = Logger.get(this.getClass());
+
+    public LocalDirectoryStorage(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public InputObject get(String key, String eTag) throws IOException {
+        Path path = root.resolve(key);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(String.format("No input file %s", path));
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String currentETag = String.format("%x-%x", attributes.size(), attributes.lastModifiedTime().toMillis());
+        if (currentETag.equals(eTag)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        Date lastModified = new Date(attributes.lastModifiedTime().toMillis());
+        return new InputObject() {
+            private final InputStream content = new ByteBufferInputStream(buffer);
+
+            @Override
+            public InputStream getContent() {
+                return content;
+            }
+
+            @Override
+            public String getETag() {
+                return currentETag;
+            }
+
+            @Override
+            public Date getLastModified() {
+                return lastModified;
+            }
+
+            @Override
+            public void abort() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public List<String> listCommonPrefixes(String prefix, String delimiter) throws IOException {
+        if (!"/".equals(delimiter)) {
+            throw new IllegalArgumentException("Only \"/\" is supported as a delimiter for local directories");
+        }
+        int slash = prefix.lastIndexOf('/');
+        String dirPart = prefix.substring(0, slash + 1);
+        String namePart = prefix.substring(slash + 1);
+        Path dir = root.resolve(dirPart.isEmpty() ? "." : dirPart);
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        List<String> prefixes = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (Files.isDirectory(entry) && name.startsWith(namePart)) {
+                    prefixes.add(dirPart + name + "/");
+                }
+            }
+        }
+        Collections.sort(prefixes);
+        return prefixes;
+    }
+
+    @Override
+    public boolean hasKeys(String prefix) throws IOException {
+        Path path = root.resolve(prefix);
+        if (Files.isRegularFile(path)) {
+            return true;
+        }
+        if (!Files.isDirectory(path)) {
+            return false;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            return entries.iterator().hasNext();
+        }
+    }
+
+    @Override
+    public void put(Map<String, String> item) {
+        analytics.put(String.format("%s/%s", item.get("symb"), item.get("type")), item);
+    }
+
+    @Override
+    public void delete(String symbol, Predicate<String> types) {
+        analytics.values().removeIf(item -> symbol.equals(item.get("symb")) && types.test(item.get("type")));
+    }
+
+    @Override
+    public void flush() {
+        try {
+            ANALYTICS_WRITER.writeValue(root.resolve("analytics.json").toFile(), new TreeMap<>(analytics));
+        } catch (IOException e) {
+            log.error(e, String.format("Failed to write analytics to %s", root));
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    @Override
+    public void put(String key, byte[] image, String contentType) throws IOException {
+        Path path = root.resolve("images").resolve(key);
+        Files.createDirectories(path.getParent());
+        Files.write(path, image);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ubiswal.storage;
+
+import com.ubiswal.metrics.Histogram;
+import com.ubiswal.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Token bucket allowing `permitsPerSecond` requests per second, with bursts of up to one second's worth after a
+ * quiet period. A caller that finds the bucket empty takes a token on credit and sleeps until it is paid back, so
+ * waiting callers are served in the order they arrived. Waits are recorded in analytics_throttle_wait_seconds.
+ */
+public class RateLimiter {
+    private final double permitsPerNano;
+    private final double burst;
+    private final Histogram waits;
+    private double tokens;
+    private long last = System.nanoTime();
+
+    public RateLimiter(String name, double permitsPerSecond) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, permitsPerSecond);
+        this.tokens = burst;
+        this.waits = Metrics.histogram("analytics_throttle_wait_seconds", "limit", name);
+    }
+
+    // Takes a permit, waiting for it if needed. An interrupted wait returns early with the interrupt flag set.
+    public void acquire() {
+        long wait = reserve();
+        if (wait <= 0) {
+            return;
+        }
+        waits.observeNanos(wait);
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Nanos to wait for the permit just taken.
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - last) * permitsPerNano);
+        last = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+}
@@ -0,0 +1,63 @@
+package com.ubiswal.storage;
+
+import com.ubiswal.resilience.Retryer;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Wraps the S3 side of a Storage, the input reads and listings and the image uploads, so that every request goes
+ * through the S3 retryer and circuit breaker. The analytics sink is left as it is, DynamoBatchWriter has its own.
+ * Only opening an input is covered, a failure while its body is streamed fails the symbol.
+ */
+public final class ResilientStorage {
+    private ResilientStorage() {
+    }
+
+    public static Storage of(Storage storage, Retryer s3) {
+        return new Storage(new Input(storage.getInputSource(), s3), storage.getAnalyticsSink(), new Images(storage.getImageSink(), s3));
+    }
+
+    private static final class Input implements InputSource {
+        private final InputSource delegate;
+        private final Retryer retryer;
+
+        Input(InputSource delegate, Retryer retryer) {
+            this.delegate = delegate;
+            this.retryer = retryer;
+        }
+
+        @Override
+        public InputObject get(String key, String eTag) throws IOException {
+            return retryer.call(() -> delegate.get(key, eTag));
+        }
+
+        @Override
+        public List<String> listCommonPrefixes(String prefix, String delimiter) throws IOException {
+            return retryer.call(() -> delegate.listCommonPrefixes(prefix, delimiter));
+        }
+
+        @Override
+        public boolean hasKeys(String prefix) throws IOException {
+            return retryer.call(() -> delegate.hasKeys(prefix));
+        }
+    }
+
+    private static final class Images implements ImageSink {
+        private final ImageSink delegate;
+        private final Retryer retryer;
+
+        Images(ImageSink delegate, Retryer retryer) {
+            this.delegate = delegate;
+            this.retryer = retryer;
+        }
+
+        @Override
+        public void put(String key, byte[] image, String contentType) throws IOException {
+            retryer.call(() -> {
+                delegate.put(key, image, contentType);
+                return null;
+            });
+        }
+    }
+}
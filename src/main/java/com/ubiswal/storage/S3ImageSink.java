@@ -0,0 +1,39 @@
+package com.ubiswal.storage;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.util.Md5Utils;
+
+import java.io.ByteArrayInputStream;
+
+/*
+ * Publicly readable objects in the website bucket. Every object carries a Cache-Control header, so browsers and
+ * CDNs can reuse a chart until the next run replaces it, and a Content-MD5 that S3 checks the upload against.
+ */
+public class S3ImageSink implements ImageSink {
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final String cacheControl;
+
+    // cacheControl may be null to leave the header out.
+    public S3ImageSink(AmazonS3 s3Client, String bucketName, String cacheControl) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.cacheControl = cacheControl;
+    }
+
+    @Override
+    public void put(String key, byte[] image, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(image.length);
+        metadata.setContentType(contentType);
+        metadata.setContentMD5(Md5Utils.md5AsBase64(image));
+        if (cacheControl != null) {
+            metadata.setCacheControl(cacheControl);
+        }
+        PutObjectRequest request = new PutObjectRequest(bucketName, key, new ByteArrayInputStream(image), metadata).withCannedAcl(CannedAccessControlList.PublicRead);
+        s3Client.putObject(request);
+    }
+}
@@ -0,0 +1,87 @@
+package com.ubiswal.storage;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class S3InputSource implements InputSource {
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+
+    public S3InputSource(AmazonS3 s3Client, String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public InputObject get(String key, String eTag) {
+        GetObjectRequest request = new GetObjectRequest(bucketName, key);
+        if (eTag != null) {
+            request.withNonmatchingETagConstraint(eTag);
+        }
+        // the sdk returns null when the ETag constraint is not met
+        S3Object s3obj = s3Client.getObject(request);
+        return s3obj == null ? null : new S3InputObject(s3obj);
+    }
+
+    // Follows continuation tokens, so prefixes past the first 1000 keys are not missed.
+    @Override
+    public List<String> listCommonPrefixes(String prefix, String delimiter) {
+        List<String> prefixes = new ArrayList<>();
+        ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix).withDelimiter(delimiter);
+        ListObjectsV2Result result;
+        do {
+            result = s3Client.listObjectsV2(req);
+            prefixes.addAll(result.getCommonPrefixes());
+            req.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return prefixes;
+    }
+
+    @Override
+    public boolean hasKeys(String prefix) {
+        ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix).withMaxKeys(1);
+        return s3Client.listObjectsV2(req).getKeyCount() > 0;
+    }
+
+    private static final class S3InputObject implements InputObject {
+        private final S3Object s3obj;
+
+        S3InputObject(S3Object s3obj) {
+            this.s3obj = s3obj;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return s3obj.getObjectContent();
+        }
+
+        @Override
+        public String getETag() {
+            return s3obj.getObjectMetadata().getETag();
+        }
+
+        @Override
+        public Date getLastModified() {
+            return s3obj.getObjectMetadata().getLastModified();
+        }
+
+        @Override
+        public void abort() {
+            s3obj.getObjectContent().abort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            s3obj.close();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.ubiswal.storage;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.twitter.logging.Logger;
+import com.ubiswal.metrics.Histogram;
+import com.ubiswal.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Compact binary copies of parsed crawler payloads, kept in a local directory as <directory>/<input key>.snap, so
+ * that a payload is parsed from json once and loaded from its snapshot by later runs, restarts and backfills.
+ *
+ *   header: byte[4] magic, byte version, byte flags (1 = deflated), varint ETag length, ETag, zigzag varlong
+ *           last modified millis (-1 if unknown), int crc32 of the stored body
+ *   body:   whatever the payload's Codec writes, deflated if the flag is set
+ *
+ * A snapshot records the ETag of the object it was parsed from. When there is no state to compare with, the input
+ * is read conditionally on that ETag, and an unchanged object is served from the snapshot without downloading or
+ * parsing it. The magic starts with a non ascii byte, so a snapshot is never mistaken for json.
+ *
+ * The crawler writes new keys every hour, so prune() deletes whole <date>/ directories once they are old enough.
+ */
+public class SnapshotStore {
+    private static final byte[] MAGIC = {(byte) 0x89, 'S', 'N', 'P'};
+    private static final byte VERSION = 1;
+    private static final byte DEFLATED = 1;
+    private static final String SUFFIX = ".snap";
+
+    // Binary encoding of one payload type. Codecs are stateless and shared.
+    public interface Codec<T> {
+        void encode(T value, Writer out);
+
+        T decode(Reader in) throws IOException;
+    }
+
+    private final Path directory;
+    private final boolean compress;
+    private Logger log = Logger.get(this.getClass());
+
+    public SnapshotStore(Path directory, boolean compress) throws IOException {
+        this.directory = directory;
+        this.compress = compress;
+        Files.createDirectories(directory);
+    }
+
+    /*
+     * Same as JsonObjects.fetchIfChanged. Without an eTag, a snapshot of the key is looked for first and, if the
+     * object still has the snapshot's ETag, the snapshot is returned in place of the object.
+     */
+    public JsonObjects.Versioned<byte[]> fetchIfChanged(InputSource source, String key, String eTag) throws IOException {
+        JsonObjects.Versioned<byte[]> snapshot = eTag == null ? load(key) : null;
+        JsonObjects.Versioned<byte[]> fetched = JsonObjects.fetchIfChanged(source, key, snapshot == null ? eTag : snapshot.getETag());
+        if (fetched == null && snapshot != null) {
+            Metrics.counter("analytics_snapshot_reads_total", "result", "hit").inc();
+            return snapshot;
+        }
+        if (snapshot != null) {
+            Metrics.counter("analytics_snapshot_reads_total", "result", "stale").inc();
+        }
+        return fetched;
+    }
+
+    // Decodes what fetchIfChanged returned: a snapshot with the codec, json with the reader, saving a snapshot of it.
+    public <T> JsonObjects.Versioned<T> parse(String key, JsonObjects.Versioned<byte[]> body, ObjectReader reader, Codec<T> codec) throws IOException {
+        if (!isSnapshot(body.getValue())) {
+            JsonObjects.Versioned<T> parsed = JsonObjects.parse(body, reader);
+            save(key, parsed, codec, body.getValue().length);
+            return parsed;
+        }
+        Histogram.Timer timer = Metrics.stage("snapshot_decode");
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(body.getValue());
+            Header header = Header.read(buffer);
+            return new JsonObjects.Versioned<>(codec.decode(new Reader(header.body(buffer))), body.getETag(), body.getLastModified());
+        } catch (BufferUnderflowException | DataFormatException e) {
+            throw new IOException(String.format("Corrupt snapshot of %s", key), e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    static boolean isSnapshot(byte[] body) {
+        return body.length >= MAGIC.length && body[0] == MAGIC[0] && body[1] == MAGIC[1] && body[2] == MAGIC[2] && body[3] == MAGIC[3];
+    }
+
+    // The snapshot of the key with the version of its object, or null if there is none or it is unreadable.
+    private JsonObjects.Versioned<byte[]> load(String key) {
+        Path path = path(key);
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            Header header = Header.read(ByteBuffer.wrap(bytes));
+            return new JsonObjects.Versioned<>(bytes, header.eTag, header.lastModified);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.warning(String.format("Dropping unreadable snapshot %s: %s", path, e.getMessage()));
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException deleteFailed) {
+                // tried again on the next load
+            }
+            return null;
+        }
+    }
+
+    // Failures are logged and cost only the snapshot, the parsed value is fine.
+    private <T> void save(String key, JsonObjects.Versioned<T> parsed, Codec<T> codec, int jsonBytes) {
+        Path path = path(key);
+        try {
+            Metrics.time("snapshot_write", () -> {
+                Writer body = new Writer();
+                codec.encode(parsed.getValue(), body);
+                byte[] stored = compress ? deflate(body.toByteArray()) : body.toByteArray();
+                CRC32 crc = new CRC32();
+                crc.update(stored);
+                Writer out = new Writer();
+                out.bytes(MAGIC);
+                out.bytes(new byte[]{VERSION, compress ? DEFLATED : 0});
+                out.string(parsed.getETag());
+                out.zigzag(parsed.getLastModified() == null ? -1 : parsed.getLastModified().getTime());
+                out.bytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+                out.bytes(stored);
+                Files.createDirectories(path.getParent());
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                Files.write(temp, out.toByteArray());
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Metrics.counter("analytics_snapshot_bytes_total", "format", "json").add(jsonBytes);
+                Metrics.counter("analytics_snapshot_bytes_total", "format", "snapshot").add(out.size());
+            });
+        } catch (IOException | RuntimeException e) {
+            log.warning(String.format("Failed to write snapshot %s: %s", path, e.getMessage()));
+        }
+    }
+
+    /*
+     * Deletes the snapshots of the <date>/ partitions more than `days` days before today (UTC), and returns how many
+     * dates were deleted. A date that fails to delete is logged and tried again on the next prune.
+     */
+    public int prune(int days) {
+        LocalDate oldest = LocalDate.now(ZoneOffset.UTC).minusDays(days);
+        int pruned = 0;
+        try (DirectoryStream<Path> dates = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path date : dates) {
+                try {
+                    if (LocalDate.parse(date.getFileName().toString()).isBefore(oldest)) {
+                        deleteTree(date);
+                        pruned++;
+                    }
+                } catch (DateTimeParseException e) {
+                    // not a partition, left as it is
+                } catch (IOException e) {
+                    log.warning(String.format("Failed to delete the snapshots in %s: %s", date, e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            log.warning(String.format("Failed to list the snapshots in %s: %s", directory, e.getMessage()));
+        }
+        if (pruned > 0) {
+            log.info(String.format("Deleted the snapshots of %d dates before %s", pruned, oldest));
+        }
+        Metrics.counter("analytics_snapshot_pruned_dates_total").add(pruned);
+        return pruned;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException failure) throws IOException {
+                if (failure != null) {
+                    throw failure;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private Path path(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static final class Header {
+        final boolean deflated;
+        final String eTag;
+        final Date lastModified;
+
+        private Header(boolean deflated, String eTag, Date lastModified) {
+            this.deflated = deflated;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        // Reads the header, leaving the buffer at the body, and checks the body against the crc.
+        static Header read(ByteBuffer buffer) throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a snapshot");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unknown snapshot version %d", version));
+            }
+            boolean deflated = (buffer.get() & DEFLATED) != 0;
+            Reader reader = new Reader(buffer);
+            String eTag = reader.string();
+            long lastModified = reader.zigzag();
+            int crc = buffer.getInt();
+            CRC32 actual = new CRC32();
+            actual.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if ((int) actual.getValue() != crc) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return new Header(deflated, eTag, lastModified < 0 ? null : new Date(lastModified));
+        }
+
+        ByteBuffer body(ByteBuffer buffer) throws DataFormatException {
+            if (!deflated) {
+                return buffer.slice();
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.remaining() * 4);
+                byte[] chunk = new byte[8192];
+                while (!inflater.finished()) {
+                    int inflated = inflater.inflate(chunk);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated snapshot body");
+                    }
+                    out.write(chunk, 0, inflated);
+                }
+                return ByteBuffer.wrap(out.toByteArray());
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    // Growable buffer with the primitive encodings codecs are built from.
+    public static final class Writer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        public void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        // Small positive and negative values in few bytes.
+        public void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        // null is written as length 0, other strings as length + 1.
+        public void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1L);
+            bytes(utf8);
+        }
+
+        public void bytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+    }
+
+    public static final class Reader {
+        private final ByteBuffer buffer;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        public long zigzag() throws IOException {
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public String string() throws IOException {
+            long length = varint();
+            if (length == 0) {
+                return null;
+            }
+            if (length - 1 > buffer.remaining()) {
+                throw new IOException("Malformed string");
+            }
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), (int) (length - 1), StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + (int) (length - 1));
+            return value;
+        }
+    }
+}
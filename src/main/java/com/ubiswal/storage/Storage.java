@@ -0,0 +1,27 @@
+package com.ubiswal.storage;
+
+import lombok.Getter;
+
+// The input source and the sinks a run reads from and writes to, picked by Config.storageBackend.
+public final class Storage {
+    @Getter
+    private final InputSource inputSource;
+    @Getter
+    private final AnalyticsSink analyticsSink;
+    @Getter
+    private final ImageSink imageSink;
+
+    public Storage(InputSource inputSource, AnalyticsSink analyticsSink, ImageSink imageSink) {
+        this.inputSource = inputSource;
+        this.analyticsSink = analyticsSink;
+        this.imageSink = imageSink;
+    }
+
+    public static Storage of(InMemoryStorage storage) {
+        return new Storage(storage, storage, storage);
+    }
+
+    public static Storage of(LocalDirectoryStorage storage) {
+        return new Storage(storage, storage, storage);
+    }
+}
@@ -0,0 +1,106 @@
+package com.ubiswal.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/*
+ * Wraps a Storage so that every S3 request (reads, listings and image uploads) takes a permit from one limiter, and
+ * every analytics item from another. Items are what DynamoDB write capacity is consumed by, batching or not.
+ */
+public final class ThrottledStorage {
+    private ThrottledStorage() {
+    }
+
+    // A limit of 0 or less leaves that side unthrottled.
+    public static Storage of(Storage storage, double s3RequestsPerSecond, double dynamoItemsPerSecond) {
+        InputSource inputSource = storage.getInputSource();
+        ImageSink imageSink = storage.getImageSink();
+        AnalyticsSink analyticsSink = storage.getAnalyticsSink();
+        if (s3RequestsPerSecond > 0) {
+            RateLimiter s3 = new RateLimiter("s3", s3RequestsPerSecond);
+            inputSource = new Input(inputSource, s3);
+            imageSink = new Images(imageSink, s3);
+        }
+        if (dynamoItemsPerSecond > 0) {
+            analyticsSink = new Analytics(analyticsSink, new RateLimiter("dynamo", dynamoItemsPerSecond));
+        }
+        return new Storage(inputSource, analyticsSink, imageSink);
+    }
+
+    private static final class Input implements InputSource {
+        private final InputSource delegate;
+        private final RateLimiter limiter;
+
+        Input(InputSource delegate, RateLimiter limiter) {
+            this.delegate = delegate;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public InputObject get(String key, String eTag) throws IOException {
+            limiter.acquire();
+            return delegate.get(key, eTag);
+        }
+
+        @Override
+        public List<String> listCommonPrefixes(String prefix, String delimiter) throws IOException {
+            limiter.acquire();
+            return delegate.listCommonPrefixes(prefix, delimiter);
+        }
+
+        @Override
+        public boolean hasKeys(String prefix) throws IOException {
+            limiter.acquire();
+            return delegate.hasKeys(prefix);
+        }
+    }
+
+    private static final class Images implements ImageSink {
+        private final ImageSink delegate;
+        private final RateLimiter limiter;
+
+        Images(ImageSink delegate, RateLimiter limiter) {
+            this.delegate = delegate;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void put(String key, byte[] image, String contentType) throws IOException {
+            limiter.acquire();
+            delegate.put(key, image, contentType);
+        }
+    }
+
+    private static final class Analytics implements AnalyticsSink {
+        private final AnalyticsSink delegate;
+        private final RateLimiter limiter;
+
+        Analytics(AnalyticsSink delegate, RateLimiter limiter) {
+            this.delegate = delegate;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void put(Map<String, String> item) {
+            limiter.acquire();
+            delegate.put(item);
+        }
+
+        @Override
+        public void delete(String symbol, Predicate<String> types) {
+            delegate.delete(symbol, types);
+        }
+
+        @Override
+        public void flush() {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}